@@ -0,0 +1,286 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A compact binary form of an input file, which is replayed without parsing the text or looking up the IDs.
+ * That saves the parsing share of a text replay, about a quarter of it, while the rest is the work of the commands and their output,
+ * so the replay is only that much faster.
+ * The converter runs the first phase of every command, so the binary file holds the commands as they are resolved: every command
+ * is an opcode byte followed by the ordinals of its users and posts, and only a new user or post carries its ID as text.
+ * The opcode is the ordinal of the command type, with the highest bit set for a command whose IDs are not appropriate or do not exist,
+ * which has nothing after its opcode. The like flags of a scroll are packed into bits, eight flags in a byte, after their count.
+ * A scroll line can have fewer flags than posts, which the text replay accepts as long as the feed runs out before the flags do,
+ * so only the flags of the line are kept, and the replay fails in the same way as the text replay if the feed reaches a missing flag.
+ * Empty and unknown lines are dropped, since they have no output.
+ *
+ * The layout of the file is:
+ *   magic, version                                     two 4 byte integers
+ *   user count, post count                             the number of users and posts that the commands start from
+ *   the commands until the end of the file
+ * Every integer after the header is a variable length integer, and every text is its length followed by its UTF-8 bytes.
+ * Usage of the converter: java BinaryCommandLog input output [snapshot]
+ */
+public class BinaryCommandLog {
+    private static final int MAGIC = 0x46434D44; // "FCMD"
+    private static final int VERSION = 2;
+    private static final int ERROR = 0x80; // Set on the opcode of a command which only logs an error.
+    private static final CommandType[] TYPES = CommandType.values();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java BinaryCommandLog input output [snapshot]");
+            return;
+        }
+        long commands = convert(args[0], args[1], args.length > 2 ? args[2] : null);
+        System.out.printf("Converted %d commands, %d bytes of text into %d bytes.%n",
+                commands, Files.size(Path.of(args[0])), Files.size(Path.of(args[1])));
+    }
+
+    /**
+     * Returns true if the file starts with the magic number of a binary command log.
+     * @param fileName is the name of the file.
+     * @return true for a binary command log, false for a text file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static boolean isBinary(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) > 0) {
+                // The first four bytes are read, if the file has them.
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Converts an input file into a binary command log.
+     * @param textFileName is the name of the input file.
+     * @param binaryFileName is the name of the binary file to write.
+     * @param snapshotFileName is the name of the snapshot that the commands are replayed on, or null if they start from no users.
+     * @return the number of commands which are written.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public static long convert(String textFileName, String binaryFileName, String snapshotFileName) throws IOException {
+        // The commands are resolved by a manager of their own, which gives the new users and posts the same ordinals as the replay.
+        FeedManager resolver = new FeedManager();
+        if (snapshotFileName != null) {
+            Snapshot.read(resolver, snapshotFileName);
+        }
+        MappedCommandReader reader = new MappedCommandReader(textFileName);
+        FeedManager.Command command = new FeedManager.Command();
+        byte[] likeFlags = new byte[16];
+        long lineNumber = 0;
+        long commands = 0;
+
+        try (FileChannel channel = FileChannel.open(Path.of(binaryFileName),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter writer = new ChannelWriter(channel);
+            writer.putInt(MAGIC);
+            writer.putInt(VERSION);
+            writer.putVarint(resolver.getUsers().getSize());
+            writer.putVarint(resolver.getPosts().getSize());
+
+            CommandLine line;
+            while ((line = reader.nextLine()) != null) {
+                lineNumber++;
+                if (!resolver.resolve(line, command)) {
+                    continue;
+                }
+                commands++;
+                if (!command.valid) {
+                    writer.putByte(ERROR | command.type.ordinal());
+                    continue;
+                }
+                writer.putByte(command.type.ordinal());
+                switch (command.type) {
+                    case CREATE_USER: {
+                        writer.putText(command.user.getId());
+                        break;
+                    }
+                    case FOLLOW_USER:
+                    case UNFOLLOW_USER:
+                    case SEE_ALL_POSTS_FROM_USER: {
+                        writer.putVarint(command.user.getOrdinal());
+                        writer.putVarint(command.otherUser.getOrdinal());
+                        break;
+                    }
+                    case CREATE_POST: {
+                        writer.putVarint(command.user.getOrdinal());
+                        writer.putText(command.post.getId());
+                        writer.putText(command.post.getContent());
+                        break;
+                    }
+                    case SEE_POST:
+                    case TOGGLE_LIKE: {
+                        writer.putVarint(command.user.getOrdinal());
+                        writer.putVarint(command.post.getOrdinal());
+                        break;
+                    }
+                    case GENERATE_FEED: {
+                        writer.putVarint(command.user.getOrdinal());
+                        writer.putVarint(command.num);
+                        break;
+                    }
+                    case SCROLL_THROUGH_FEED: {
+                        writer.putVarint(command.user.getOrdinal());
+                        writer.putVarint(command.num);
+                        // The flags after the first num are never read, like in the text replay.
+                        int likeCount = Math.max(Math.min(line.getTokenCount() - 3, command.num), 0);
+                        int bytes = flagBytes(likeCount);
+                        writer.putVarint(likeCount);
+                        if (likeFlags.length < bytes) {
+                            likeFlags = new byte[Math.max(bytes, likeFlags.length * 2)];
+                        }
+                        Arrays.fill(likeFlags, 0, bytes, (byte) 0);
+                        for (int i = 0; i < likeCount; i++) {
+                            if (command.isLiked(i)) {
+                                likeFlags[i >> 3] |= (byte) (1 << (i & 7));
+                            }
+                        }
+                        writer.putBytes(likeFlags, bytes);
+                        break;
+                    }
+                    case SORT_POSTS: {
+                        writer.putVarint(command.user.getOrdinal());
+                        break;
+                    }
+                    case TRENDING_POSTS: {
+                        // The author is written as its ordinal plus one, or 0 for the global ranking.
+                        writer.putVarint(command.num);
+                        writer.putVarint(command.user == null ? 0 : command.user.getOrdinal() + 1);
+                        break;
+                    }
+                }
+            }
+            writer.flush();
+        } finally {
+            reader.close();
+        }
+        return commands;
+    }
+
+    // Returns the number of bytes which hold the given number of like flags.
+    private static int flagBytes(int count) {
+        return count > 0 ? (count + 7) >>> 3 : 0;
+    }
+
+    /**
+     * Replays the commands of a binary command log and writes their output into the output file,
+     * in the same way as FeedManager.scanFile does for the input file that the log is converted from.
+     * @param manager is the engine which executes the commands, it must have the users and posts that the log starts from.
+     * @param binaryFileName is the name of the binary command log.
+     * @param outputFileName is the name of the file to write data to.
+     * @throws IOException if a file cannot be read or written, or the log does not start from the users and posts of the manager.
+     */
+    public static void replay(FeedManager manager, String binaryFileName, String outputFileName) throws IOException {
+        if (manager.getCommandLog() != null) {
+            throw new IllegalStateException("A binary command log cannot be written to a write-ahead log.");
+        }
+        try (FileChannel channel = FileChannel.open(Path.of(binaryFileName), StandardOpenOption.READ);
+             OutputSink out = new OutputSink(new OutputSink.ChannelTarget(outputFileName))) {
+            ChannelReader reader = new ChannelReader(channel);
+            if (reader.getInt() != MAGIC || reader.getInt() != VERSION) {
+                throw new IOException(binaryFileName + " is not a binary command log of this version.");
+            }
+            int userCount = reader.getVarint();
+            int postCount = reader.getVarint();
+            if (manager.getUsers().getSize() != userCount || manager.getPosts().getSize() != postCount) {
+                throw new IOException(binaryFileName + " does not start from the users and posts of the manager.");
+            }
+
+            // The users and posts are kept in arrays by their ordinals, which is how the commands refer to them.
+            User[] users = new User[Math.max(userCount, 16)];
+            for (User user: manager.getUsers()) {
+                users[user.getOrdinal()] = user;
+            }
+            Post[] posts = new Post[Math.max(postCount, 16)];
+            for (Post post: manager.getPosts()) {
+                posts[post.getOrdinal()] = post;
+            }
+            FeedManager.Command command = new FeedManager.Command();
+            byte[] likeFlags = new byte[16];
+
+            while (!reader.isAtEnd()) {
+                int opcode = reader.getByte() & 0xFF;
+                if ((opcode & ~ERROR) >= TYPES.length) {
+                    throw new IOException(binaryFileName + " has an unknown opcode " + opcode + ".");
+                }
+                command.type = TYPES[opcode & ~ERROR];
+                command.valid = (opcode & ERROR) == 0;
+                command.user = null;
+                command.otherUser = null;
+                command.post = null;
+                command.num = 0;
+                command.likeFlags = likeFlags;
+                if (command.valid) {
+                    switch (command.type) {
+                        case CREATE_USER: {
+                            command.user = manager.registerUser(reader.getText());
+                            if (userCount == users.length) {
+                                users = Arrays.copyOf(users, users.length * 2);
+                            }
+                            users[userCount++] = command.user;
+                            break;
+                        }
+                        case FOLLOW_USER:
+                        case UNFOLLOW_USER:
+                        case SEE_ALL_POSTS_FROM_USER: {
+                            command.user = users[reader.getVarint()];
+                            command.otherUser = users[reader.getVarint()];
+                            break;
+                        }
+                        case CREATE_POST: {
+                            command.user = users[reader.getVarint()];
+                            String postId = reader.getText();
+                            command.post = manager.registerPost(postId, command.user, reader.getText());
+                            if (postCount == posts.length) {
+                                posts = Arrays.copyOf(posts, posts.length * 2);
+                            }
+                            posts[postCount++] = command.post;
+                            break;
+                        }
+                        case SEE_POST:
+                        case TOGGLE_LIKE: {
+                            command.user = users[reader.getVarint()];
+                            command.post = posts[reader.getVarint()];
+                            break;
+                        }
+                        case GENERATE_FEED: {
+                            command.user = users[reader.getVarint()];
+                            command.num = reader.getVarint();
+                            break;
+                        }
+                        case SCROLL_THROUGH_FEED: {
+                            command.user = users[reader.getVarint()];
+                            command.num = reader.getVarint();
+                            command.likeCount = reader.getVarint();
+                            int bytes = flagBytes(command.likeCount);
+                            if (likeFlags.length < bytes) {
+                                likeFlags = new byte[Math.max(bytes, likeFlags.length * 2)];
+                                command.likeFlags = likeFlags;
+                            }
+                            reader.getBytes(likeFlags, bytes);
+                            break;
+                        }
+                        case SORT_POSTS: {
+                            command.user = users[reader.getVarint()];
+                            break;
+                        }
+                        case TRENDING_POSTS: {
+                            command.num = reader.getVarint();
+                            int author = reader.getVarint();
+                            command.user = author == 0 ? null : users[author - 1];
+                            break;
+                        }
+                    }
+                }
+                manager.apply(command, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Loads the users, posts and follows at the beginning of an input file much faster than executing them one by one,
+ * for seeding a large graph. The commands of the seed are create_user, follow_user, unfollow_user and create_post,
+ * and the seed ends at the first command of another type; the rest of the file is executed one by one as usual.
+ *
+ * A first pass counts the new users and posts, so their hash maps are sized once. The second pass registers the users and posts
+ * in input order, which gives them the same ordinals, and only collects the posts and the follows. Then the posts of every author
+ * are restored at once: its heap is built from them with buildHeap, and its skip list of sorted posts is linked from a sorted copy
+ * of them, without a search for each post. The followings and followers are sized from the number of follows,
+ * and the follows are applied in input order, so the followers cross the celebrity thresholds at the same commands.
+ * The inboxes are built after the whole graph is loaded. The users and posts end up the same as after executing the commands
+ * one by one, but instead of a line for every command, the output gets a single line with the counts of the seed.
+ */
+public class BulkLoader {
+    /**
+     * Bulk loads the seed at the beginning of the input file, and executes the rest of the file one by one.
+     * @param manager is the engine which receives the users and posts.
+     * @param inputFileName is the name of the file to scan data from.
+     * @param outputFileName is the name of the file to write data to.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public static void run(FeedManager manager, String inputFileName, String outputFileName) throws IOException {
+        // The first pass only reads the first word of the lines, to count the users and posts of the seed.
+        int userLines = 0;
+        int postLines = 0;
+        MappedCommandReader counter = new MappedCommandReader(inputFileName);
+        CommandLine line;
+        while ((line = counter.nextLine()) != null) {
+            CommandType type = line.getType();
+            if (type == null) {
+                continue;
+            }
+            if (!isSeedCommand(type)) {
+                break;
+            }
+            if (type == CommandType.CREATE_USER) {
+                userLines++;
+            } else if (type == CommandType.CREATE_POST) {
+                postLines++;
+            }
+        }
+        counter.close();
+        manager.getUsers().ensureCapacity(manager.getUsers().getSize() + userLines);
+        manager.getPosts().ensureCapacity(manager.getPosts().getSize() + postLines);
+
+        // The second pass registers the users and posts, and collects the posts and follows.
+        MappedCommandReader reader = new MappedCommandReader(inputFileName);
+        FeedManager.Command command = new FeedManager.Command();
+        Post[] newPosts = new Post[Math.max(postLines, 16)];
+        int postCount = 0;
+        int userCount = 0;
+        // A follow is kept as the ordinals of the two users, an unfollow as the complement of the followed user's ordinal.
+        int[] followers = new int[1024];
+        int[] followedUsers = new int[1024];
+        int followCount = 0;
+        int failed = 0;
+        CommandLine rest = null; // The first line after the seed, which is executed one by one.
+        while ((line = reader.nextLine()) != null) {
+            CommandType type = line.getType();
+            if (type == null) {
+                continue;
+            }
+            if (!isSeedCommand(type)) {
+                rest = line;
+                break;
+            }
+            manager.resolve(line, command);
+            if (!command.valid) {
+                failed++;
+                continue;
+            }
+            switch (type) {
+                case CREATE_USER: {
+                    userCount++;
+                    break;
+                }
+                case CREATE_POST: {
+                    if (postCount == newPosts.length) {
+                        newPosts = Arrays.copyOf(newPosts, postCount * 2);
+                    }
+                    newPosts[postCount++] = command.post;
+                    break;
+                }
+                default: {
+                    if (followCount == followers.length) {
+                        followers = Arrays.copyOf(followers, followCount * 2);
+                        followedUsers = Arrays.copyOf(followedUsers, followCount * 2);
+                    }
+                    followers[followCount] = command.user.getOrdinal();
+                    int followed = command.otherUser.getOrdinal();
+                    followedUsers[followCount++] = type == CommandType.FOLLOW_USER ? followed : ~followed;
+                    break;
+                }
+            }
+        }
+
+        User[] users = new User[manager.getUsers().getSize()];
+        for (User user: manager.getUsers()) {
+            users[user.getOrdinal()] = user;
+        }
+        // The inboxes are dropped while the graph changes, since building them once at the end is cheaper than keeping them up to date.
+        boolean[] hadInbox = new boolean[users.length];
+        for (User user: users) {
+            if (user.getInbox() != null) {
+                hadInbox[user.getOrdinal()] = true;
+                user.dropInbox();
+            }
+        }
+        addPosts(users, newPosts, postCount);
+        manager.resetTrendingPosts();
+        int failedFollows = applyFollows(users, followers, followedUsers, followCount);
+        failed += failedFollows;
+        for (User user: users) {
+            if (hadInbox[user.getOrdinal()]) {
+                user.enableInbox();
+            }
+        }
+
+        OutputSink out = new OutputSink(outputFileName);
+        out.append("Bulk loaded ").append(userCount).append(" users, ").append(postCount).append(" posts and ")
+                .append(followCount - failedFollows).append(" follows and unfollows, ").append(failed).append(" commands failed.").newLine();
+        manager.setOutput(out);
+        if (rest != null) {
+            manager.execute(rest);
+            while ((line = reader.nextLine()) != null) {
+                manager.execute(line);
+            }
+        }
+        reader.close();
+        out.close();
+    }
+
+    // Returns true for the commands which can be loaded in bulk.
+    private static boolean isSeedCommand(CommandType type) {
+        return type == CommandType.CREATE_USER || type == CommandType.FOLLOW_USER
+                || type == CommandType.UNFOLLOW_USER || type == CommandType.CREATE_POST;
+    }
+
+    // Adds the new posts to their authors, by building the heap and the skip list of sorted posts of every author at once.
+    private static void addPosts(User[] users, Post[] newPosts, int postCount) {
+        int[] counts = new int[users.length];
+        for (int i = 0; i < postCount; i++) {
+            counts[newPosts[i].getAuthor().getOrdinal()]++;
+        }
+        Post[][] postsByAuthor = new Post[users.length][];
+        for (User user: users) {
+            int ordinal = user.getOrdinal();
+            if (counts[ordinal] > 0) {
+                // The posts which the author already has are kept, in front of the new ones.
+                postsByAuthor[ordinal] = new Post[user.getPosts().getSize() + counts[ordinal]];
+                counts[ordinal] = 0;
+                for (Post post: user.getPosts()) {
+                    postsByAuthor[ordinal][counts[ordinal]++] = post;
+                }
+            }
+        }
+        for (int i = 0; i < postCount; i++) {
+            int author = newPosts[i].getAuthor().getOrdinal();
+            postsByAuthor[author][counts[author]++] = newPosts[i];
+        }
+        for (User user: users) {
+            if (postsByAuthor[user.getOrdinal()] != null) {
+                user.restorePosts(postsByAuthor[user.getOrdinal()]);
+            }
+        }
+    }
+
+    // Applies the follows and unfollows in input order, after sizing the followings and followers. Returns the number which failed.
+    private static int applyFollows(User[] users, int[] followers, int[] followedUsers, int followCount) {
+        int[] followingCounts = new int[users.length];
+        int[] followerCounts = new int[users.length];
+        for (int i = 0; i < followCount; i++) {
+            if (followedUsers[i] >= 0) {
+                followingCounts[followers[i]]++;
+                followerCounts[followedUsers[i]]++;
+            }
+        }
+        for (User user: users) {
+            int ordinal = user.getOrdinal();
+            if (followingCounts[ordinal] > 0 || followerCounts[ordinal] > 0) {
+                user.ensureFollowCapacity(user.getFollowings().getSize() + followingCounts[ordinal],
+                        user.getFollowers().getSize() + followerCounts[ordinal]);
+            }
+        }
+
+        // The same checks as in the execution of a single command are made, in the same order.
+        int failed = 0;
+        for (int i = 0; i < followCount; i++) {
+            User user = users[followers[i]];
+            if (followedUsers[i] >= 0) {
+                User followedUser = users[followedUsers[i]];
+                if (user.isFollowing(followedUser)) {
+                    failed++;
+                } else {
+                    user.follow(followedUser);
+                }
+            } else {
+                User followedUser = users[~followedUsers[i]];
+                if (!user.isFollowing(followedUser)) {
+                    failed++;
+                } else {
+                    user.unfollow(followedUser);
+                }
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,75 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A view over a range of ASCII bytes in a buffer, which acts as the String of these bytes without creating it.
+ * The hash code is computed in the same way as the hash code of a String, and a slice is equal to any character sequence
+ * with the same characters, so a slice can be used to search for a String key in a MyHashMap.
+ * The slice is reused for the following ranges, so it must not be stored.
+ */
+public class ByteSlice implements CharSequence {
+    private ByteBuffer buffer;
+    private int start; // Index of the first byte in the buffer.
+    private int length;
+
+    /**
+     * Points the slice to a new range.
+     * @param buffer is the buffer holding the bytes.
+     * @param start is the index of the first byte.
+     * @param end is the index after the last byte.
+     */
+    public void set(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.length = end - start;
+    }
+    @Override
+    public int length() {
+        return length;
+    }
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new StringIndexOutOfBoundsException(index);
+        }
+        return (char) (buffer.get(start + index) & 0xFF);
+    }
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    // Creates the String of the bytes, which is only done when the ID has to be stored.
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + (buffer.get(start + i) & 0xFF);
+        }
+        return hash;
+    }
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof CharSequence)) {
+            return false;
+        }
+        CharSequence sequence = (CharSequence) object;
+        if (sequence.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (sequence.charAt(i) != (char) (buffer.get(start + i) & 0xFF)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the integers and texts written by ChannelWriter from a buffer, which is refilled from the channel when it runs out.
+ */
+public class ChannelReader {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public ChannelReader(FileChannel channel) {
+        this.channel = channel;
+        buffer.limit(0);
+    }
+
+    // Makes sure that the given number of bytes are in the buffer, or all the rest of the file if it is shorter.
+    private void fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes && channel.read(buffer) > 0) {
+            // The channel is read until enough bytes are in the buffer or the file ends.
+        }
+        buffer.flip();
+    }
+
+    // Returns true if the whole file is read.
+    public boolean isAtEnd() throws IOException {
+        fill(1);
+        return !buffer.hasRemaining();
+    }
+    public byte getByte() throws IOException {
+        fill(1);
+        if (!buffer.hasRemaining()) {
+            throw new EOFException("The file is truncated.");
+        }
+        return buffer.get();
+    }
+    public int getInt() throws IOException {
+        fill(4);
+        if (buffer.remaining() < 4) {
+            throw new EOFException("The file is truncated.");
+        }
+        return buffer.getInt();
+    }
+    public long getLong() throws IOException {
+        fill(8);
+        if (buffer.remaining() < 8) {
+            throw new EOFException("The file is truncated.");
+        }
+        return buffer.getLong();
+    }
+    public int getVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = getByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("The file is corrupt.");
+    }
+    public void getBytes(byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            fill(1);
+            if (!buffer.hasRemaining()) {
+                throw new EOFException("The file is truncated.");
+            }
+            int piece = Math.min(buffer.remaining(), length - offset);
+            buffer.get(bytes, offset, piece);
+            offset += piece;
+        }
+    }
+    public String getText() throws IOException {
+        byte[] bytes = new byte[getVarint()];
+        getBytes(bytes, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    public int[] getSortedInts() throws IOException {
+        int[] values = new int[getVarint()];
+        int previous = 0;
+        for (int i = 0; i < values.length; i++) {
+            previous += getVarint();
+            values[i] = previous;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the integers and texts of a binary file into a buffer, which is written to the channel when it gets full.
+ * It is used for the snapshots and the binary command logs, which are read back by ChannelReader.
+ */
+public class ChannelWriter {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public ChannelWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    // Makes room for the given number of bytes, which must not be more than the size of the buffer.
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    // Writes the buffered bytes to the channel, which must be done before the channel is closed.
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    public void putByte(int value) throws IOException {
+        ensure(1);
+        buffer.put((byte) value);
+    }
+    public void putInt(int value) throws IOException {
+        ensure(4);
+        buffer.putInt(value);
+    }
+    public void putLong(long value) throws IOException {
+        ensure(8);
+        buffer.putLong(value);
+    }
+
+    // Writes a non-negative integer in groups of seven bits, the lowest group first, with the highest bit set on all but the last.
+    // A negative integer takes five bytes.
+    public void putVarint(int value) throws IOException {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+    public void putBytes(byte[] bytes, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            ensure(1);
+            int piece = Math.min(buffer.remaining(), length - offset);
+            buffer.put(bytes, offset, piece);
+            offset += piece;
+        }
+    }
+
+    // Writes the length of the text followed by its UTF-8 bytes.
+    public void putText(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        putVarint(bytes.length);
+        putBytes(bytes, bytes.length);
+    }
+
+    // Writes the number of the integers, and then every integer as its difference from the previous one.
+    public void putSortedInts(int[] values) throws IOException {
+        putVarint(values.length);
+        int previous = 0;
+        for (int value: values) {
+            putVarint(value - previous);
+            previous = value;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The words of a single line of an input file. The line is split at every space, in the same way as String.split(" "),
+ * but the words are slices over the bytes of the line, so no String is created for them.
+ * A line with a non-ASCII character is decoded and split as Strings instead, which is slower but gives the same words.
+ * The same object is reused for every line, so the words must not be stored.
+ */
+public class CommandLine {
+    private ByteSlice[] tokens = new ByteSlice[8]; // The words of the line, the first count of them are in use.
+    private int count;
+    private String[] decodedTokens; // The words of a line with a non-ASCII character, null for an ASCII line.
+    private ByteBuffer lineBuffer; // The buffer holding the whole line, from lineStart to lineEnd.
+    private int lineStart;
+    private int lineEnd;
+
+    public CommandLine() {
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = new ByteSlice();
+        }
+    }
+
+    // Splits the given line into words, for a line which is not read from a file.
+    public void set(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        set(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * Splits the given range of bytes into words.
+     * @param buffer is the buffer holding the line.
+     * @param start is the index of the first byte of the line.
+     * @param end is the index after the last byte of the line, without the line terminator.
+     */
+    public void set(ByteBuffer buffer, int start, int end) {
+        lineBuffer = buffer;
+        lineStart = start;
+        lineEnd = end;
+        decodedTokens = null;
+        count = 0;
+        // An empty line has a single empty word, like the result of String.split.
+        if (start == end) {
+            tokens[count++].set(buffer, start, end);
+            return;
+        }
+        int tokenStart = start;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < 0) {
+                decode(buffer, start, end);
+                return;
+            }
+            if (b == ' ') {
+                addToken(buffer, tokenStart, i);
+                tokenStart = i + 1;
+            }
+        }
+        addToken(buffer, tokenStart, end);
+        // Trailing empty words are dropped, like String.split does.
+        while (count > 0 && tokens[count - 1].length() == 0) {
+            count--;
+        }
+    }
+    private void addToken(ByteBuffer buffer, int start, int end) {
+        if (count == tokens.length) {
+            ByteSlice[] old = tokens;
+            tokens = new ByteSlice[count * 2];
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = i < count ? old[i] : new ByteSlice();
+            }
+        }
+        tokens[count++].set(buffer, start, end);
+    }
+    private void decode(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+        decodedTokens = new String(bytes, StandardCharsets.UTF_8).split(" ");
+        count = decodedTokens.length;
+    }
+
+    // Returns the number of bytes of the whole line, without the line terminator.
+    public int getByteLength() {
+        return lineEnd - lineStart;
+    }
+
+    // Copies the bytes of the whole line into the given array, exactly as they are in the input.
+    public void copyBytes(byte[] target, int offset) {
+        lineBuffer.get(lineStart, target, offset, lineEnd - lineStart);
+    }
+    public int getTokenCount() {
+        return count;
+    }
+
+    /**
+     * Returns the word at the given index, in the same way as the element of the array returned by String.split.
+     * @param index is the index of the word.
+     * @return the word.
+     * @throws ArrayIndexOutOfBoundsException if the line does not have that many words.
+     */
+    public CharSequence token(int index) {
+        if (index < 0 || index >= count) {
+            throw new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for length " + count);
+        }
+        return decodedTokens != null ? decodedTokens[index] : tokens[index];
+    }
+
+    // Parses the word at the given index as an integer, directly from its characters.
+    public int intToken(int index) {
+        CharSequence token = token(index);
+        return Integer.parseInt(token, 0, token.length(), 10);
+    }
+
+    // Returns the command written in the first word, or null if there is no such command.
+    public CommandType getType() {
+        return CommandType.of(token(0));
+    }
+}
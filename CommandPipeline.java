@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replays an input file in three stages which run on their own threads, like an assembly line.
+ * The parse stage splits the lines into reusable command lines, the apply stage executes them on the users and posts in input order
+ * and formats their output into buffers, and the write stage writes the full buffers to the output file.
+ * The stages are connected by bounded single producer single consumer rings, so a stage which gets ahead waits for the next one
+ * instead of using up the memory, and the commands and buffers are passed in batches rather than one by one.
+ * The apply stage never waits for the disk as long as a free buffer is left, so the replay takes about as long as its slowest stage.
+ */
+public class CommandPipeline {
+    private static final int COMMAND_SLOTS = 4096; // Number of command lines which can wait between the parse and apply stages.
+    private static final int PUBLISH_BATCH = 256; // Number of command lines which are parsed before they are published together.
+    private static final int BUFFERS = 8; // Number of output buffers, which circulate between the apply and write stages.
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final SpscRing<CommandLine> commands = new SpscRing<>(COMMAND_SLOTS, CommandLine::new);
+    private final SpscRing<Chunk> fullChunks = new SpscRing<>(BUFFERS, null); // Buffers on their way to the write stage.
+    private final SpscRing<Chunk> freeChunks = new SpscRing<>(BUFFERS, null); // Buffers on their way back to the apply stage.
+    private volatile Throwable failure; // The first error of any stage, which stops the other stages as well.
+    private final FeedManager manager;
+
+    private CommandPipeline(FeedManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * An output buffer and the number of bytes in it.
+     */
+    private static class Chunk {
+        final byte[] bytes = new byte[BUFFER_SIZE];
+        int length;
+    }
+
+    /**
+     * Replays the commands of the input file and writes their output into the output file, in the same way as FeedManager.scanFile.
+     * @param manager is the engine which executes the commands.
+     * @param inputFileName is the name of the file to scan data from.
+     * @param outputFileName is the name of the file to write data to.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public static void run(FeedManager manager, String inputFileName, String outputFileName) throws IOException {
+        new CommandPipeline(manager).replay(inputFileName, outputFileName);
+    }
+
+    private void replay(String inputFileName, String outputFileName) throws IOException {
+        MappedCommandReader reader = new MappedCommandReader(inputFileName);
+        FileChannel channel = FileChannel.open(Path.of(outputFileName),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        // Every buffer except the one which the apply stage starts with is free at the beginning.
+        Chunk first = new Chunk();
+        for (int i = 1; i < BUFFERS; i++) {
+            freeChunks.offer(new Chunk());
+        }
+        freeChunks.publish();
+
+        Thread parser = new Thread(() -> parse(reader), "parse");
+        Thread writer = new Thread(() -> write(channel), "write");
+        parser.start();
+        writer.start();
+
+        // The calling thread is the apply stage.
+        try {
+            // With a log, the commands are committed before their output is handed to the write stage.
+            OutputSink.Target target = new ChunkTarget(first);
+            WriteAheadLog log = manager.getCommandLog();
+            apply(new OutputSink(log == null ? target : log.before(target), first.bytes));
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            // After an error, the remaining command lines are dropped so that the parse stage does not wait for a free slot.
+            fullChunks.close();
+            while (commands.next() != null) {
+                commands.release();
+            }
+        }
+        join(parser);
+        join(writer);
+        reader.close();
+        channel.close();
+        rethrow();
+    }
+
+    // Parse stage: fills the slots of the command ring with the lines of the input file.
+    private void parse(MappedCommandReader reader) {
+        try {
+            int parsed = 0;
+            while (failure == null) {
+                CommandLine line = commands.claim();
+                if (!reader.nextLine(line)) {
+                    commands.unclaim();
+                    break;
+                }
+                if (++parsed % PUBLISH_BATCH == 0) {
+                    commands.publish();
+                }
+            }
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            commands.close();
+        }
+    }
+
+    // Apply stage: executes the command lines in input order. The last buffer is handed over when the output sink is closed.
+    private void apply(OutputSink sink) throws IOException {
+        manager.setOutput(sink);
+        CommandLine line;
+        while (failure == null && (line = commands.next()) != null) {
+            manager.execute(line);
+            commands.release();
+        }
+        sink.close();
+    }
+
+    // Write stage: writes the full buffers to the output file and gives them back to the apply stage.
+    private void write(FileChannel channel) {
+        try {
+            Chunk chunk;
+            while ((chunk = fullChunks.next()) != null) {
+                if (failure == null) {
+                    ByteBuffer bytes = ByteBuffer.wrap(chunk.bytes, 0, chunk.length);
+                    while (bytes.hasRemaining()) {
+                        channel.write(bytes);
+                    }
+                }
+                fullChunks.release();
+                freeChunks.offer(chunk);
+                freeChunks.publish();
+            }
+        } catch (Throwable e) {
+            fail(e);
+            // The apply stage may be waiting for a free buffer, so the buffers keep circulating without being written.
+            Chunk chunk;
+            while ((chunk = fullChunks.next()) != null) {
+                fullChunks.release();
+                freeChunks.offer(chunk);
+                freeChunks.publish();
+            }
+        }
+    }
+
+    /**
+     * Target of the output sink of the apply stage, which passes the full buffers to the write stage
+     * and continues with a buffer that the write stage has given back.
+     */
+    private class ChunkTarget implements OutputSink.Target {
+        private Chunk current;
+
+        ChunkTarget(Chunk first) {
+            this.current = first;
+        }
+        @Override
+        public byte[] write(byte[] buffer, int length) {
+            current.length = length;
+            fullChunks.offer(current);
+            fullChunks.publish();
+            current = freeChunks.next();
+            freeChunks.release();
+            return current.bytes;
+        }
+        @Override
+        public void close() {
+            fullChunks.close();
+        }
+    }
+
+    private void fail(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Throws the first error of the stages on the calling thread.
+    private void rethrow() throws IOException {
+        Throwable e = failure;
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+    }
+}
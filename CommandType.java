@@ -0,0 +1,47 @@
+/**
+ * The commands which can be given in an input file, with the words that they are written with.
+ */
+public enum CommandType {
+    CREATE_USER("create_user", true),
+    FOLLOW_USER("follow_user", true),
+    UNFOLLOW_USER("unfollow_user", true),
+    CREATE_POST("create_post", true),
+    SEE_POST("see_post", true),
+    SEE_ALL_POSTS_FROM_USER("see_all_posts_from_user", true),
+    TOGGLE_LIKE("toggle_like", true),
+    GENERATE_FEED("generate_feed", false),
+    SCROLL_THROUGH_FEED("scroll_through_feed", true), // The scrolled posts are seen and may be liked.
+    SORT_POSTS("sort_posts", false),
+    TRENDING_POSTS("trending_posts", false);
+
+    private static final CommandType[] TYPES = values();
+    private final String word;
+    private final boolean mutating;
+
+    CommandType(String word, boolean mutating) {
+        this.word = word;
+        this.mutating = mutating;
+    }
+    public String getWord() {
+        return word;
+    }
+
+    // Returns true if the command can change the users or posts, so that it has to be written to the command log.
+    public boolean isMutating() {
+        return mutating;
+    }
+
+    /**
+     * Finds the command which is written with the given word, without creating a String of the word.
+     * @param word is the first word of a line.
+     * @return the command, or null if no command is written with that word.
+     */
+    public static CommandType of(CharSequence word) {
+        for (CommandType type: TYPES) {
+            if (type.word.length() == word.length() && type.word.contentEquals(word)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
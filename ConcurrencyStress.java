@@ -0,0 +1,280 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs random commands on a ConcurrentFeedManager from many threads at the same time, and then checks that the users and posts
+ * are still consistent: the likes of every post equal the number of users who liked it, every liked post is seen,
+ * the followings and followers agree, and the heap and the sorted posts of every author hold the same posts in order,
+ * with the rank of every post read correctly from the sorted posts, and the trending posts of every author are its greatest posts.
+ * The global ranking, which is built by the first global trending query while the other threads run, holds every post once in order.
+ * Usage: java ConcurrencyStress [threads] [users] [posts per user] [commands per thread] [seed]
+ */
+public class ConcurrencyStress {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int userCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int postsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int commandsPerThread = args.length > 3 ? Integer.parseInt(args[3]) : 200_000;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+
+        ConcurrentFeedManager manager = new ConcurrentFeedManager();
+        CommandLine line = new CommandLine();
+        OutputSink out = new OutputSink();
+        Random random = new Random(seed);
+
+        // The users and posts are created first, with a few random follows.
+        for (int i = 0; i < userCount; i++) {
+            run(manager, line, out, "create_user user" + i);
+        }
+        for (int i = 0; i < userCount; i++) {
+            for (int j = 0; j < postsPerUser; j++) {
+                run(manager, line, out, "create_post user" + i + " post" + i + "_" + j + " content");
+            }
+            for (int j = 0; j < 5; j++) {
+                run(manager, line, out, "follow_user user" + i + " user" + random.nextInt(userCount));
+            }
+        }
+
+        // Every thread runs its own random commands, including creations which change the hash maps while they are read.
+        Thread[] workers = new Thread[threads];
+        Throwable[] failures = new Throwable[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    runRandomCommands(manager, new Random(seed + worker + 1), worker, userCount, postsPerUser, commandsPerThread);
+                } catch (Throwable e) {
+                    failures[worker] = e;
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker: workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (Throwable failure: failures) {
+            if (failure != null) {
+                failure.printStackTrace();
+                System.exit(1);
+            }
+        }
+        System.out.printf("%d commands on %d threads in %.2f s, %.0f commands per second%n",
+                (long) threads * commandsPerThread, threads, seconds, threads * commandsPerThread / seconds);
+
+        List<String> errors = checkInvariants(manager.getEngine());
+        for (String error: errors) {
+            System.out.println(error);
+        }
+        if (!errors.isEmpty()) {
+            System.out.println(errors.size() + " invariants are broken.");
+            System.exit(1);
+        }
+        System.out.println("All invariants hold.");
+    }
+
+    private static void run(ConcurrentFeedManager manager, CommandLine line, OutputSink out, String command) throws IOException {
+        line.set(command);
+        manager.execute(line, out);
+        out.reset();
+    }
+
+    private static void runRandomCommands(ConcurrentFeedManager manager, Random random, int worker,
+                                          int userCount, int postsPerUser, int commands) throws IOException {
+        CommandLine line = new CommandLine();
+        OutputSink out = new OutputSink();
+        StringBuilder command = new StringBuilder();
+        int created = 0;
+        for (int i = 0; i < commands; i++) {
+            String user = "user" + random.nextInt(userCount);
+            String otherUser = "user" + random.nextInt(userCount);
+            String post = "post" + random.nextInt(userCount) + "_" + random.nextInt(postsPerUser);
+            int choice = random.nextInt(100);
+            command.setLength(0);
+            if (choice < 40) {
+                command.append("toggle_like ").append(user).append(' ').append(post);
+            } else if (choice < 50) {
+                command.append("see_post ").append(user).append(' ').append(post);
+            } else if (choice < 58) {
+                command.append("follow_user ").append(user).append(' ').append(otherUser);
+            } else if (choice < 64) {
+                command.append("unfollow_user ").append(user).append(' ').append(otherUser);
+            } else if (choice < 72) {
+                command.append("generate_feed ").append(user).append(' ').append(1 + random.nextInt(10));
+            } else if (choice < 82) {
+                int num = 1 + random.nextInt(5);
+                command.append("scroll_through_feed ").append(user).append(' ').append(num);
+                for (int j = 0; j < num; j++) {
+                    command.append(' ').append(random.nextInt(2));
+                }
+            } else if (choice < 87) {
+                command.append("see_all_posts_from_user ").append(user).append(' ').append(otherUser);
+            } else if (choice < 90) {
+                command.append("sort_posts ").append(user);
+            } else if (choice < 92) {
+                // Half of the rankings are global, the first of which builds the ranking while the other threads like posts.
+                command.append("trending_posts ").append(1 + random.nextInt(10));
+                if (random.nextBoolean()) {
+                    command.append(' ').append(user);
+                }
+            } else if (choice < 96) {
+                command.append("create_post ").append(user).append(" extra").append(worker).append('_').append(created++).append(" content");
+            } else {
+                command.append("create_user user").append(worker).append('_').append(i);
+            }
+            line.set(command.toString());
+            manager.execute(line, out);
+            out.reset();
+        }
+    }
+
+    /**
+     * Checks the invariants of the users and their posts, after all the threads are done.
+     * @param engine is the engine of the users and posts.
+     * @return the description of every broken invariant.
+     */
+    static List<String> checkInvariants(FeedManager engine) {
+        MyHashMap<String, User> users = engine.getUsers();
+        List<String> errors = new ArrayList<>();
+        // The posts are placed by their ordinals, so the liked posts of every user are counted in a single pass over its bitmap.
+        int postCount = 0;
+        for (User user: users) {
+            for (Post post: user.getPosts()) {
+                postCount = Math.max(postCount, post.getOrdinal() + 1);
+            }
+        }
+        Post[] postsByOrdinal = new Post[postCount];
+        for (User user: users) {
+            for (Post post: user.getPosts()) {
+                postsByOrdinal[post.getOrdinal()] = post;
+            }
+        }
+
+        int[] likers = new int[postCount];
+        for (User user: users) {
+            for (int ordinal: user.getLikedPosts().toArray()) {
+                if (ordinal >= postCount || postsByOrdinal[ordinal] == null) {
+                    errors.add(user.getId() + " liked the post numbered " + ordinal + ", which no author has.");
+                    continue;
+                }
+                likers[ordinal]++;
+                if (!user.hasSeenPost(postsByOrdinal[ordinal])) {
+                    errors.add(user.getId() + " liked " + postsByOrdinal[ordinal].getId() + " without seeing it.");
+                }
+            }
+        }
+        for (Post post: postsByOrdinal) {
+            if (post != null && likers[post.getOrdinal()] != post.getLikes()) {
+                errors.add(post.getId() + " has " + post.getLikes() + " likes but " + likers[post.getOrdinal()] + " users liked it.");
+            }
+        }
+
+        // The global ranking is built by the first global query while the other threads run, and kept up to date after that.
+        // It has to hold every post of every author exactly once, in order, with the likes counted above.
+        if (!engine.hasTrendingPosts()) {
+            errors.add("No global trending query has built the ranking.");
+        }
+        else {
+            int authorPosts = 0;
+            for (Post post: postsByOrdinal) {
+                if (post != null) {
+                    authorPosts++;
+                }
+            }
+            Post[] ranking = engine.getTrendingPosts(postCount + 1, null);
+            if (ranking.length != authorPosts) {
+                errors.add("The global ranking has " + ranking.length + " posts but the authors have " + authorPosts + ".");
+            }
+            boolean[] ranked = new boolean[postCount];
+            for (int i = 0; i < ranking.length; i++) {
+                Post post = ranking[i];
+                int ordinal = post.getOrdinal();
+                if (ordinal >= postCount || postsByOrdinal[ordinal] != post) {
+                    errors.add(post.getId() + " is in the global ranking but in the heap of no author.");
+                    continue;
+                }
+                if (ranked[ordinal]) {
+                    errors.add(post.getId() + " is in the global ranking more than once.");
+                }
+                ranked[ordinal] = true;
+                if (i > 0 && ranking[i - 1].compareTo(post) <= 0) {
+                    errors.add("The global ranking is out of order at " + post.getId() + ".");
+                }
+                if (likers[ordinal] != post.getLikes()) {
+                    errors.add(post.getId() + " is ranked with " + post.getLikes() + " likes but " + likers[ordinal] + " users liked it.");
+                }
+            }
+        }
+
+        for (User user: users) {
+            for (User followedUser: user.getFollowings()) {
+                if (!followedUser.getFollowers().containsKey(user.getOrdinal())) {
+                    errors.add(user.getId() + " follows " + followedUser.getId() + " but is not among its followers.");
+                }
+            }
+            for (User follower: user.getFollowers()) {
+                if (!follower.isFollowing(user)) {
+                    errors.add(follower.getId() + " is a follower of " + user.getId() + " but does not follow it.");
+                }
+            }
+
+            MyIndexedMaxHeap<Post> heap = user.getPosts();
+            for (int slot = 1; slot <= heap.getSize(); slot++) {
+                Post post = heap.get(slot);
+                if (post.getHeapIndex() != slot) {
+                    errors.add(post.getId() + " is not at its slot in the heap of " + user.getId() + ".");
+                }
+                if (slot > 1 && heap.get(slot / 2).compareTo(post) <= 0) {
+                    errors.add("The heap of " + user.getId() + " is out of order at " + post.getId() + ".");
+                }
+            }
+            // The sorted posts are walked in order, and the rank of every post is also read from the links of the skip list.
+            MySkipList<Post> ranked = user.getRankedPosts();
+            if (heap.getSize() != ranked.getSize()) {
+                errors.add(user.getId() + " has " + heap.getSize() + " posts in the heap but " + ranked.getSize() + " sorted posts.");
+            }
+            Post previous = null;
+            int rank = 0;
+            for (Post post: ranked) {
+                if (previous != null && previous.compareTo(post) <= 0) {
+                    errors.add("The sorted posts of " + user.getId() + " are out of order at " + post.getId() + ".");
+                }
+                if (!heap.contains(post)) {
+                    errors.add(post.getId() + " is in the sorted posts of " + user.getId() + " but not in the heap.");
+                }
+                if (engine.getPostRank(post) != rank || ranked.get(rank) != post) {
+                    errors.add(post.getId() + " is at rank " + rank + " of " + user.getId() + " but its rank is read as "
+                            + engine.getPostRank(post) + ".");
+                }
+                previous = post;
+                rank++;
+            }
+
+            // The trending posts of the author are checked against a sort of the posts in the heap, which does not use the skip list.
+            Post[] expected = new Post[heap.getSize()];
+            for (int slot = 1; slot <= heap.getSize(); slot++) {
+                expected[slot - 1] = heap.get(slot);
+            }
+            Arrays.sort(expected, Collections.reverseOrder());
+            int num = 1 + heap.getSize() / 2;
+            Post[] trending = engine.getTrendingPosts(num, user);
+            if (trending.length != Math.min(num, expected.length)) {
+                errors.add("The trending posts of " + user.getId() + " are " + trending.length + " posts instead of "
+                        + Math.min(num, expected.length) + ".");
+            }
+            for (int i = 0; i < trending.length && i < expected.length; i++) {
+                if (trending[i] != expected[i]) {
+                    errors.add("The trending post at " + i + " of " + user.getId() + " is " + trending[i].getId() + " instead of "
+                            + expected[i].getId() + ".");
+                    break;
+                }
+            }
+        }
+        return errors;
+    }
+}
@@ -0,0 +1,292 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A feed engine which can be shared by many threads, with the same commands and the same output as FeedManager.
+ * The first phase of a command, which looks up and registers the IDs, runs under the lock of the hash maps: the lookups share it,
+ * and only the creation of a user or a post takes it alone, for both of its phases. The second phase runs under the locks of
+ * the users that the command reads and writes, which are the same users that the parallel replay schedules by. The users are spread over a fixed number of
+ * striped read write locks by their ordinals, and the stripes of a command are always locked in ascending order, so two commands
+ * cannot wait for each other. The likes of a post are changed together with its place in the author's heap and sorted posts,
+ * so the like counter is guarded by the stripe of the author instead of being a counter of its own. The global ranking of the posts
+ * is shared by all the authors, so it is changed and read under a lock of its own inside the engine, once it is built by the first
+ * query, which locks all the users.
+ * Like the parallel replay, the engine works in the pull mode without cursors, where a command does not change any inbox.
+ */
+public class ConcurrentFeedManager {
+    private static final int STRIPES = 256; // Number of user locks, a power of two.
+
+    private final FeedManager engine = new FeedManager();
+    private final ReentrantReadWriteLock registryLock = new ReentrantReadWriteLock();
+    private final ReentrantReadWriteLock[] stripes = new ReentrantReadWriteLock[STRIPES];
+
+    public ConcurrentFeedManager() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    // Returns the engine behind the locks, for checks and reports. It must not be used while commands are being executed.
+    public FeedManager getEngine() {
+        return engine;
+    }
+
+    /**
+     * Executes the given command line, which can be done by many threads at the same time.
+     * @param input is the command line to be executed, it belongs to the calling thread.
+     * @param out is the output sink of the calling thread, which receives the output of the command.
+     * @throws IOException if the output cannot be written.
+     */
+    public void execute(CommandLine input, OutputSink out) throws IOException {
+        CommandType type = input.getType();
+        if (type == null) {
+            return;
+        }
+        FeedManager.Command command = new FeedManager.Command();
+        if (type == CommandType.CREATE_USER || type == CommandType.CREATE_POST) {
+            createUnderRegistryLock(input, command, out);
+            return;
+        }
+        Lock registry = registryLock.readLock();
+        registry.lock();
+        try {
+            engine.resolve(input, command);
+        } finally {
+            registry.unlock();
+        }
+
+        // A command whose IDs are not valid only logs an error.
+        if (!command.valid) {
+            engine.apply(command, out);
+            return;
+        }
+        // The first global trending query builds the ranking from the hash map of the posts and their likes,
+        // so no post is created meanwhile, and all the users are locked so that no like runs either.
+        if (type == CommandType.TRENDING_POSTS && command.user == null) {
+            registry.lock();
+            try {
+                if (engine.hasTrendingPosts()) {
+                    engine.apply(command, out);
+                }
+                else {
+                    lockAllStripes();
+                    try {
+                        engine.apply(command, out);
+                    } finally {
+                        unlockAllStripes();
+                    }
+                }
+            } finally {
+                registry.unlock();
+            }
+            return;
+        }
+        LockSet locks = new LockSet();
+        while (true) {
+            locks.clear();
+            addUsers(command, locks);
+            locks.lock();
+            try {
+                // The followings of a feed are read before they are locked, so they are checked again while they are locked.
+                if (followingsLocked(command, locks)) {
+                    engine.apply(command, out);
+                    return;
+                }
+            } finally {
+                locks.unlock();
+            }
+        }
+    }
+
+    /**
+     * Creates a user or a post while the hash maps are locked for this thread alone. A new post is also added to the heap of its author
+     * before the lock is released, so no other command can find the post before it is in its place.
+     */
+    private void createUnderRegistryLock(CommandLine input, FeedManager.Command command, OutputSink out) throws IOException {
+        Lock registry = registryLock.writeLock();
+        registry.lock();
+        try {
+            engine.resolve(input, command);
+            if (command.valid && command.type == CommandType.CREATE_POST) {
+                Lock author = stripeOf(command.user).writeLock();
+                author.lock();
+                try {
+                    engine.apply(command, out);
+                } finally {
+                    author.unlock();
+                }
+            }
+            else {
+                // A new user is not known to any other command yet.
+                engine.apply(command, out);
+            }
+        } finally {
+            registry.unlock();
+        }
+    }
+
+    // Adds the stripes of the users that the second phase of a valid command reads and writes.
+    private void addUsers(FeedManager.Command command, LockSet locks) {
+        User user = command.user;
+        switch (command.type) {
+            case FOLLOW_USER:
+            case UNFOLLOW_USER: {
+                locks.add(user, true);
+                locks.add(command.otherUser, true);
+                break;
+            }
+            case SEE_POST: {
+                locks.add(user, true);
+                break;
+            }
+            case TOGGLE_LIKE: {
+                locks.add(user, true);
+                locks.add(command.post.getAuthor(), true);
+                break;
+            }
+            case SEE_ALL_POSTS_FROM_USER: {
+                locks.add(user, true);
+                locks.add(command.otherUser, false);
+                break;
+            }
+            case GENERATE_FEED:
+            case SCROLL_THROUGH_FEED: {
+                // A feed reads the posts of all the followed users, and a scroll can like any of them.
+                // The followings can only be read under the lock of the user, which is released before all the stripes are locked.
+                boolean write = command.type == CommandType.SCROLL_THROUGH_FEED;
+                locks.add(user, write);
+                Lock lock = stripeOf(user).readLock();
+                lock.lock();
+                try {
+                    for (User followedUser: user.getFollowings()) {
+                        locks.add(followedUser, write);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                break;
+            }
+            case SORT_POSTS: {
+                locks.add(user, false);
+                break;
+            }
+            case TRENDING_POSTS: {
+                // The ranking of an author is read under the lock of the author, the global ranking has a lock of its own
+                // and is read under the read lock of the hash maps.
+                if (user != null) {
+                    locks.add(user, false);
+                }
+                break;
+            }
+            default: {
+                // The creations are done under the lock of the hash maps.
+                break;
+            }
+        }
+    }
+
+    // Returns true if all the users that a feed or a scroll reads are locked, after its followings might have changed.
+    private boolean followingsLocked(FeedManager.Command command, LockSet locks) {
+        if (command.type != CommandType.GENERATE_FEED && command.type != CommandType.SCROLL_THROUGH_FEED) {
+            return true;
+        }
+        boolean write = command.type == CommandType.SCROLL_THROUGH_FEED;
+        for (User followedUser: command.user.getFollowings()) {
+            if (!locks.holds(stripeIndex(followedUser), write)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    // Write locks all the stripes in ascending order, which is the order of every other command.
+    private void lockAllStripes() {
+        for (ReentrantReadWriteLock stripe: stripes) {
+            stripe.writeLock().lock();
+        }
+    }
+    private void unlockAllStripes() {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].writeLock().unlock();
+        }
+    }
+    private static int stripeIndex(User user) {
+        return user.getOrdinal() & (STRIPES - 1);
+    }
+    private ReentrantReadWriteLock stripeOf(User user) {
+        return stripes[stripeIndex(user)];
+    }
+
+    /**
+     * The stripes that a command locks. Each stripe is kept once, in ascending order, and it is write locked
+     * if any of its users is written.
+     */
+    private class LockSet {
+        private int[] codes = new int[8]; // The index of each stripe shifted left by one, with the lowest bit set for a write.
+        private int count;
+
+        void clear() {
+            count = 0;
+        }
+        void add(User user, boolean write) {
+            if (count == codes.length) {
+                codes = Arrays.copyOf(codes, count * 2);
+            }
+            codes[count++] = (stripeIndex(user) << 1) | (write ? 1 : 0);
+        }
+
+        // Sorts the codes and leaves a single code for each stripe, which is the write code if there is one.
+        private void normalize() {
+            Arrays.sort(codes, 0, count);
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (kept > 0 && (codes[kept - 1] >> 1) == (codes[i] >> 1)) {
+                    codes[kept - 1] |= codes[i];
+                } else {
+                    codes[kept++] = codes[i];
+                }
+            }
+            count = kept;
+        }
+        void lock() {
+            normalize();
+            for (int i = 0; i < count; i++) {
+                ReentrantReadWriteLock stripe = stripes[codes[i] >> 1];
+                if ((codes[i] & 1) != 0) {
+                    stripe.writeLock().lock();
+                } else {
+                    stripe.readLock().lock();
+                }
+            }
+        }
+        void unlock() {
+            for (int i = count - 1; i >= 0; i--) {
+                ReentrantReadWriteLock stripe = stripes[codes[i] >> 1];
+                if ((codes[i] & 1) != 0) {
+                    stripe.writeLock().unlock();
+                } else {
+                    stripe.readLock().unlock();
+                }
+            }
+        }
+
+        // Returns true if the stripe is locked, and write locked if a write is needed.
+        boolean holds(int stripe, boolean write) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int index = codes[middle] >> 1;
+                if (index < stripe) {
+                    low = middle + 1;
+                } else if (index > stripe) {
+                    high = middle - 1;
+                } else {
+                    return !write || (codes[middle] & 1) != 0;
+                }
+            }
+            return false;
+        }
+    }
+}
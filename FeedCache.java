@@ -0,0 +1,227 @@
+/**
+ * A cache of the collected feeds, keyed by the user and the number of posts of the feed, so that a user who reads the same feed
+ * again with no change in between gets it without scanning the followed users. It is bounded both by the number of feeds and by
+ * an estimate of their bytes, and the least recently used feed is evicted first.
+ *
+ * A feed is invalidated exactly when its posts could change:
+ *   the user follows or unfollows someone, or sees all the posts of a user,   all the feeds of the user are dropped,
+ *   the user sees a post,                                                      the feeds which show the post are dropped,
+ *   a followed user creates a post or the likes of its unseen post change,     the feeds which show the post or which it can get into are dropped.
+ * A post gets into a feed only if the feed is not full, or if it comes before the last post of the feed.
+ *
+ * The cached feeds of a user are chained on the user, so an invalidation does not search the cache. Every user also keeps
+ * its followers who have cached feeds, so a new post or like of an author only visits those followers, not all of them.
+ * The cache is not synchronized, it must be used by the thread which applies the commands.
+ */
+public class FeedCache {
+    private static final int ENTRY_BYTES = 64; // Estimated bytes of an entry and its array, without the references to the posts.
+    private static final int REFERENCE_BYTES = 8;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private int entryCount;
+    private long byteCount;
+    private Entry head; // The most recently used entry.
+    private Entry tail; // The least recently used entry, which is evicted first.
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * A cached feed. It is in the list of all the entries ordered by their last use, and in the chain of the entries of its user.
+     */
+    static class Entry {
+        private final FeedCache cache;
+        private final User user;
+        private final int num;
+        private final Post[] feed; // The posts of the feed, sorted in descending order.
+        private Entry previous;
+        private Entry next;
+        private Entry nextOfUser;
+
+        Entry(FeedCache cache, User user, int num, Post[] feed) {
+            this.cache = cache;
+            this.user = user;
+            this.num = num;
+            this.feed = feed;
+        }
+
+        // Returns true if the feed has the post.
+        private boolean contains(Post post) {
+            for (Post feedPost: feed) {
+                if (feedPost == post)
+                    return true;
+            }
+            return false;
+        }
+
+        // Returns true if an unseen post of a followed user, whose likes are just set, is in the feed or can get into it.
+        private boolean canHold(Post post) {
+            return feed.length < num || post.compareTo(feed[feed.length - 1]) > 0 || contains(post);
+        }
+    }
+
+    /**
+     * Creates a cache with the given bounds.
+     * @param maxEntries is the number of feeds that the cache can hold.
+     * @param maxBytes is the estimated number of bytes that the cached feeds can take.
+     */
+    public FeedCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0)
+            throw new IllegalArgumentException("The cache must have room for at least one feed.");
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+    public FeedCache(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the cached feed of the user with the given number of posts, and marks it as the most recently used one.
+     * @param user is the user whose feed is read.
+     * @param num is the number of posts that the feed can hold.
+     * @return the posts of the feed, which must not be changed, or null if the feed is not cached.
+     */
+    public Post[] get(User user, int num) {
+        for (Entry entry = user.getCachedFeeds(); entry != null; entry = entry.nextOfUser) {
+            if (entry.num == num) {
+                hits++;
+                unlink(entry);
+                linkFirst(entry);
+                return entry.feed;
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Caches the feed of the user, and evicts the least recently used feeds if the cache is over its bounds.
+     * @param user is the user whose feed is collected.
+     * @param num is the number of posts that the feed can hold.
+     * @param feed is the collected feed, which must not be changed afterwards.
+     */
+    public void put(User user, int num, Post[] feed) {
+        Entry entry = new Entry(this, user, num, feed);
+        Entry first = user.getCachedFeeds();
+        if (first == null) {
+            // The followed users keep this user from its first cached feed until its last one is dropped.
+            for (User followedUser: user.getFollowings())
+                followedUser.addCachingFollower(user);
+        }
+        entry.nextOfUser = first;
+        user.setCachedFeeds(entry);
+        linkFirst(entry);
+        entryCount++;
+        byteCount += bytesOf(entry);
+        while (entryCount > maxEntries || byteCount > maxBytes) {
+            evictions++;
+            remove(tail);
+        }
+    }
+
+    private static long bytesOf(Entry entry) {
+        return ENTRY_BYTES + (long) REFERENCE_BYTES * entry.feed.length;
+    }
+
+    // Drops all the cached feeds of the user.
+    static void invalidateAll(User user) {
+        while (user.getCachedFeeds() != null) {
+            Entry entry = user.getCachedFeeds();
+            entry.cache.invalidations++;
+            entry.cache.remove(entry);
+        }
+    }
+
+    // Drops the cached feeds of the user which show the post, after the user has seen it.
+    static void invalidateSeen(User user, Post post) {
+        Entry entry = user.getCachedFeeds();
+        while (entry != null) {
+            Entry nextOfUser = entry.nextOfUser;
+            if (entry.contains(post)) {
+                entry.cache.invalidations++;
+                entry.cache.remove(entry);
+            }
+            entry = nextOfUser;
+        }
+    }
+
+    // Drops the cached feeds of the follower which the post can get into, after it is created or its likes have changed.
+    static void invalidateCandidate(User follower, Post post) {
+        if (follower.hasSeenPost(post))
+            return;
+        Entry entry = follower.getCachedFeeds();
+        while (entry != null) {
+            Entry nextOfUser = entry.nextOfUser;
+            if (entry.canHold(post)) {
+                entry.cache.invalidations++;
+                entry.cache.remove(entry);
+            }
+            entry = nextOfUser;
+        }
+    }
+
+    // Removes the entry from the list and from the chain of its user.
+    private void remove(Entry entry) {
+        unlink(entry);
+        entryCount--;
+        byteCount -= bytesOf(entry);
+        User user = entry.user;
+        if (user.getCachedFeeds() == entry) {
+            user.setCachedFeeds(entry.nextOfUser);
+        } else {
+            Entry previousOfUser = user.getCachedFeeds();
+            while (previousOfUser.nextOfUser != entry)
+                previousOfUser = previousOfUser.nextOfUser;
+            previousOfUser.nextOfUser = entry.nextOfUser;
+        }
+        if (user.getCachedFeeds() == null) {
+            for (User followedUser: user.getFollowings())
+                followedUser.removeCachingFollower(user);
+        }
+    }
+    private void unlink(Entry entry) {
+        if (entry.previous != null)
+            entry.previous.next = entry.next;
+        else
+            head = entry.next;
+        if (entry.next != null)
+            entry.next.previous = entry.previous;
+        else
+            tail = entry.previous;
+        entry.previous = null;
+        entry.next = null;
+    }
+    private void linkFirst(Entry entry) {
+        entry.next = head;
+        if (head != null)
+            head.previous = entry;
+        head = entry;
+        if (tail == null)
+            tail = entry;
+    }
+
+    public int getSize() {
+        return entryCount;
+    }
+    public long getHits() {
+        return hits;
+    }
+    public long getMisses() {
+        return misses;
+    }
+    public long getEvictions() {
+        return evictions;
+    }
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public String report() {
+        long lookups = hits + misses;
+        return String.format("Feed cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d invalidations, %d feeds in about %d bytes",
+                hits, misses, lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictions, invalidations, entryCount, byteCount);
+    }
+}
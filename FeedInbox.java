@@ -0,0 +1,92 @@
+/**
+ * Materialized feed of a user, which holds every unseen post of the users that the user follows, ordered by likes.
+ * The inbox is filled at write time: a new post is pushed into the inbox of each follower of its author,
+ * and following, unfollowing, seeing and liking keep the inbox up to date. Reading a feed then only visits the top of the inbox.
+ */
+public class FeedInbox {
+    /**
+     * A post waiting in the inbox. A post can wait in many inboxes, so the slot in the heap is kept by the entry, not by the post.
+     */
+    private static class Entry implements Comparable<Entry>, HeapIndexed {
+        private final Post post;
+        private int heapIndex;
+        Entry(Post post) {
+            this.post = post;
+        }
+        @Override
+        public int compareTo(Entry entry) {
+            return this.post.compareTo(entry.post);
+        }
+        @Override
+        public int getHeapIndex() { return this.heapIndex; }
+        @Override
+        public void setHeapIndex(int index) { this.heapIndex = index; }
+    }
+
+    private MyIndexedMaxHeap<Entry> heap; // The posts of the inbox, ordered by their likes.
+    private MyIntHashMap<Entry> entries; // The entries of the inbox, by the ordinals of their posts.
+
+    public FeedInbox() {
+        heap = new MyIndexedMaxHeap<>();
+        entries = new MyIntHashMap<>();
+    }
+
+    /**
+     * Creates an inbox holding the given posts, whose heap is built at once in linear time.
+     * @param posts is the array of distinct posts to be placed in the inbox.
+     * @param count is the number of posts to be taken from the beginning of the array.
+     */
+    public FeedInbox(Post[] posts, int count) {
+        Entry[] initialEntries = new Entry[count];
+        entries = new MyIntHashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            initialEntries[i] = new Entry(posts[i]);
+            entries.put(posts[i].getOrdinal(), initialEntries[i]);
+        }
+        heap = new MyIndexedMaxHeap<>(initialEntries);
+    }
+
+    // Adds the post to the inbox, if it is not already there.
+    public void add(Post post) {
+        if (entries.containsKey(post.getOrdinal()))
+            return;
+        Entry entry = new Entry(post);
+        entries.put(post.getOrdinal(), entry);
+        heap.insert(entry);
+    }
+
+    // Removes the post from the inbox, if it is there.
+    public void remove(Post post) {
+        Entry entry = entries.get(post.getOrdinal());
+        if (entry != null) {
+            entries.remove(post.getOrdinal());
+            heap.remove(entry);
+        }
+    }
+
+    // Moves the post to its new place after its likes have changed, if it is in the inbox.
+    public void update(Post post) {
+        Entry entry = entries.get(post.getOrdinal());
+        if (entry != null) {
+            heap.increaseKey(entry);
+            heap.decreaseKey(entry);
+        }
+    }
+    public boolean contains(Post post) {
+        return entries.containsKey(post.getOrdinal());
+    }
+    public int getSize() {
+        return heap.getSize();
+    }
+
+    /**
+     * Offers the posts at the top of the inbox to the given top-k heap, without removing them from the inbox.
+     * The heap of the inbox is traversed from the top in the same way as the heap of an author, with the posts of its entries.
+     * @param topPosts is the top-k heap which collects the posts.
+     * @param slots is a scratch array of at least 64 slots, which holds the slots waiting to be visited. It is reused by the caller.
+     * @return the number of posts which are visited.
+     */
+    public int offerTop(MyTopKHeap<Post> topPosts, int[] slots) {
+        return heap.offerTop(topPosts, entry -> entry.post, post -> true, slots);
+    }
+}
@@ -1,387 +1,717 @@
 import java.io.*;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.function.Predicate;
 
+/**
+ * The engine which keeps the users and posts and executes the commands on them.
+ * A command is executed in two phases. The first phase looks up the IDs of the command line in the hash maps and registers the new
+ * users and posts, and the second phase changes the users and posts and writes the output. The first phase only depends on the order
+ * of the commands, so the parallel replay can run it for many commands in advance and run the second phases at the same time.
+ */
 public class FeedManager {
     // All the users and posts are stored in hash maps, in order to access them in constant time whenever needed.
     // The keys for the hash maps are the user ID's for users and the post ID's for posts.
     // The values for the hash maps are the user and post objects that contain the corresponding information.
-    private static MyHashMap<String, User> users = new MyHashMap<>();
-    private static MyHashMap<String, Post> posts = new MyHashMap<>();
+    // These maps can grow to millions of entries, so they are rehashed incrementally, in order not to stall a single command.
+    // Every user and post is also numbered in the order of creation, and the structures inside the users work with these numbers.
+    private final MyHashMap<String, User> users = new MyHashMap<>(16, 0.75f, true);
+    private final MyHashMap<String, Post> posts = new MyHashMap<>(16, 0.75f, true);
 
-    // Reader and writer objects are declared as static data fields in order to be used in static methods.
-    private static BufferedReader reader;
-    private static BufferedWriter writer;
+    // In the push mode, the feed of every user is computed at write time and kept in an inbox, so reading a feed is cheap.
+    private boolean pushMode = false;
+
+    public void setPushMode(boolean enabled) {
+        pushMode = enabled;
+    }
+
+    // In the pull mode, a user who scrolls through the feed again gets an inbox which is kept up to date after the scroll,
+    // so that it serves as a cursor for the following scrolls and the feed is not collected from scratch again.
+    // Keeping the cursors up to date moves work to the writes, so a cursor is dropped once its user stops reading the feed.
+    private boolean feedCursors = false;
+
+    public void setFeedCursors(boolean enabled) {
+        feedCursors = enabled;
+    }
+
+    /**
+     * Enables the hybrid mode, which is the push mode except for the authors with many followers.
+     * @param celebrityThreshold is the number of followers above which the posts of an author are merged at read time.
+     */
+    public void setHybridMode(int celebrityThreshold) {
+        pushMode = true;
+        this.celebrityThreshold = celebrityThreshold;
+    }
+
+    // In the hybrid mode, the posts of an author with more followers than this threshold are not pushed to the inboxes,
+    // they are merged into the feeds at read time instead. The author is pushed again once the followers drop below half of it.
+    private int celebrityThreshold = Integer.MAX_VALUE;
+
+    public int getCelebrityThreshold() {
+        return celebrityThreshold;
+    }
+
+    // The counters of the work done for the feeds of this engine.
+    private final FeedStats feedStats = new FeedStats();
+
+    public FeedStats getFeedStats() {
+        return feedStats;
+    }
+
+    // Returns true if no user keeps an inbox. Then a command only changes the users that it names and the authors of the posts it names.
+    public boolean isPullOnly() {
+        return !pushMode && !feedCursors;
+    }
+
+    // Returns the hash map of all the users, which is used for reporting.
+    public MyHashMap<String, User> getUsers() {
+        return users;
+    }
+    public MyHashMap<String, Post> getPosts() {
+        return posts;
+    }
+
+    // Returns true if the inboxes are enabled for the new users, which is also done for the restored users.
+    public boolean isPushMode() {
+        return pushMode;
+    }
+
+    // The changing commands are written to this log before they are applied, if it is set, so that they survive a crash.
+    private WriteAheadLog log;
+
+    public void setCommandLog(WriteAheadLog log) {
+        this.log = log;
+    }
+    public WriteAheadLog getCommandLog() {
+        return log;
+    }
+
+    // All the posts ordered by their likes, which is kept up to date on every like, so that the top posts are read without a scan.
+    // Like the feed cursors, it is built on the first query and only kept up to date after that, so an input without any query
+    // does not pay for it. It is null until then, and again after the posts are restored from a snapshot or loaded in bulk.
+    // The likes of different authors can change on different threads, so the ranking is changed and read under its own monitor.
+    // A like only takes it once the ranking is built. Since a like which finds no ranking changes the likes without it, the ranking
+    // must be built while no like runs: the parallel replay runs the first query alone, and the concurrent engine locks all the users.
+    private volatile MySkipList<Post> trendingPosts;
+    private final Object trendingLock = new Object(); // It is held while the ranking is built, so it is built once.
+
+    // The collected feeds are kept in this cache, if it is set, so that a feed read again with no change in between is not collected again.
+    private FeedCache feedCache;
+
+    public void setFeedCache(FeedCache cache) {
+        this.feedCache = cache;
+    }
+    public FeedCache getFeedCache() {
+        return feedCache;
+    }
+
+    // The output sink of the commands which are executed one by one.
+    private OutputSink out;
+    private final Command command = new Command(); // The command which is reused by execute.
+
+    // Sets the sink which receives the output of the executed commands, when they are not executed by scanFile.
+    void setOutput(OutputSink sink) {
+        out = sink;
+    }
+
+    /**
+     * A command line together with the users and the post that its IDs refer to, which is filled by the first phase.
+     */
+    static class Command {
+        CommandLine input;
+        CommandType type;
+        boolean valid; // False if the IDs of the command are not appropriate or do not exist, which is logged as an error.
+        User user; // The user who gives the command.
+        User otherUser; // The followed, unfollowed or viewed user, if the command has one.
+        Post post; // The created, seen or liked post, if the command has one.
+        int num; // The number of posts of a feed or a scroll.
+        byte[] likeFlags; // The like flags of a scroll which is read from a binary command log, a bit for each post, null otherwise.
+        int likeCount; // The number of like flags, which is less than num if the scroll line ends early.
+
+        /**
+         * Returns true if the post at the given index of a scroll is liked. A flag which the line does not have fails in the same way
+         * for a binary command log as for the words of the text line that it is converted from.
+         * @param index is the index of the post in the scroll.
+         * @return true if the flag of the post is 1.
+         */
+        boolean isLiked(int index) {
+            if (likeFlags != null) {
+                if (index >= likeCount)
+                    throw new ArrayIndexOutOfBoundsException("Index " + (3 + index) + " out of bounds for length " + (3 + likeCount));
+                return (likeFlags[index >> 3] & (1 << (index & 7))) != 0;
+            }
+            return input.intToken(3 + index) == 1;
+        }
+    }
 
     /**
      * This is the method where all the scanning process from the input file is done and the corresponding methods are called.
+     * The input file is memory mapped and its lines are split into words over the raw bytes, so no String is created for a word
+     * unless it is the ID of a new user or post.
      * @param inputFileName is the name of the file to scan data from.
      * @param outputFileName is the name of the file to write data to.
      * @throws IOException if there does not exist any files with the given name.
      */
-    public static void scanFile(String inputFileName, String outputFileName) throws IOException {
-        // Reader and writer objects are initialised.
-        reader = new BufferedReader(new FileReader(inputFileName));
-        writer = new BufferedWriter(new FileWriter(outputFileName));
-        String line;
-        String[] input;
-        String action;
-
-        // For each line of the input file, the line is read and if the line is not empty,
-        // The corresponding method is called according to the first word of that line.
-        while ((line = reader.readLine()) != null) {
-            input = line.split(" ");
-            action = input[0];
-            switch (action) {
-                case ("create_user"): {
-                    createUser(input);
-                    break;
-                }
-                case ("follow_user"): {
-                    followUser(input);
-                    break;
-                }
-                case ("unfollow_user"): {
-                    unfollowUser(input);
-                    break;
-                }
-                case ("create_post"): {
-                    createPost(input);
-                    break;
-                }
-                case ("see_post"): {
-                    seePost(input);
-                    break;
-                }
-                case ("see_all_posts_from_user"): {
-                    seeAllPostsFromUser(input);
-                    break;
-                }
-                case ("toggle_like"): {
-                    toggleLike(input);
-                    break;
-                }
-                case ("generate_feed"): {
-                    generateFeed(input);
-                    break;
-                }
-                case ("scroll_through_feed"): {
-                    scrollThroughFeed(input);
-                    break;
+    public void scanFile(String inputFileName, String outputFileName) throws IOException {
+        // Reader and output sink are initialised.
+        MappedCommandReader reader = new MappedCommandReader(inputFileName);
+        // With a log, the commands are committed before their output is written.
+        OutputSink.Target target = new OutputSink.ChannelTarget(outputFileName);
+        out = new OutputSink(log == null ? target : log.before(target));
+        CommandLine input;
+
+        // For each line of the input file, the line is read and the corresponding method is called.
+        while ((input = reader.nextLine()) != null) {
+            execute(input);
+        }
+        reader.close();
+        out.close();
+    }
+
+    /**
+     * Executes the given command line. Empty and unknown lines are skipped.
+     * @param input is the command line to be executed.
+     * @throws IOException if the output cannot be written.
+     */
+    public void execute(CommandLine input) throws IOException {
+        // The time of both phases is recorded when the metrics are enabled.
+        if (Metrics.isEnabled()) {
+            long start = System.nanoTime();
+            if (resolve(input, command)) {
+                apply(command, out);
+                Metrics.recordLatency(command.type, System.nanoTime() - start);
+            }
+            return;
+        }
+        if (resolve(input, command)) {
+            apply(command, out);
+        }
+    }
+
+    /**
+     * The first phase of a command: the IDs are checked and looked up, and a new user or post is registered in its hash map.
+     * Nothing else is changed, so the later commands can be resolved before this command is applied.
+     * @param input is the command line.
+     * @param command receives the command line and the users and post that it refers to.
+     * @return false if the line is empty or its first word is not a command.
+     */
+    boolean resolve(CommandLine input, Command command) {
+        CommandType action = input.getType();
+        if (action == null) {
+            return false;
+        }
+        command.input = input;
+        command.type = action;
+        command.valid = false;
+        command.user = null;
+        command.otherUser = null;
+        command.post = null;
+        command.num = 0;
+        command.likeFlags = null;
+        switch (action) {
+            case CREATE_USER: {
+                resolveCreateUser(command);
+                break;
+            }
+            case FOLLOW_USER:
+            case UNFOLLOW_USER: {
+                resolveUserPair(command);
+                break;
+            }
+            case CREATE_POST: {
+                resolveCreatePost(command);
+                break;
+            }
+            case SEE_POST:
+            case TOGGLE_LIKE: {
+                // The user and the post must both exist.
+                command.user = users.get(input.token(1));
+                command.post = posts.get(input.token(2));
+                command.valid = command.user != null && command.post != null;
+                break;
+            }
+            case SEE_ALL_POSTS_FROM_USER: {
+                // Both of the users must exist.
+                command.user = users.get(input.token(1));
+                command.otherUser = users.get(input.token(2));
+                command.valid = command.user != null && command.otherUser != null;
+                break;
+            }
+            case GENERATE_FEED:
+            case SCROLL_THROUGH_FEED: {
+                // User ID and the number of posts to be shown in the feed is extracted.
+                CharSequence userId = input.token(1);
+                command.num = input.intToken(2);
+                command.user = users.get(userId);
+                command.valid = command.user != null;
+                break;
+            }
+            case SORT_POSTS: {
+                command.user = users.get(input.token(1));
+                command.valid = command.user != null;
+                break;
+            }
+            case TRENDING_POSTS: {
+                // The number of posts is given, and optionally the user whose posts are ranked instead of all the posts.
+                command.num = input.intToken(1);
+                if (input.getTokenCount() > 2) {
+                    command.user = users.get(input.token(2));
+                    command.valid = command.user != null;
                 }
-                case ("sort_posts"): {
-                    sortPosts(input);
-                    break;
+                else {
+                    command.valid = true;
                 }
+                break;
             }
         }
-        writer.flush();
-        writer.close();
+        return true;
     }
-    public static void createUser(String[] input) throws IOException {
-        // User ID is extracted.
-        String userId = input[1];
 
-        // If the userID is not appropriate or the user does not exist, error is logged to the output file.
-        if (!(userId.startsWith("user")) || users.containsKey(userId)) {
-            writer.write("Some error occurred in create_user.");
-            writer.newLine();
+    /**
+     * The second phase of a command: the users and posts are changed and the result is logged.
+     * @param command is a command which is resolved, and which is applied after all the commands before it.
+     * @param out is the output sink which receives the output of the command.
+     * @throws IOException if the output cannot be written.
+     */
+    void apply(Command command, OutputSink out) throws IOException {
+        // If the IDs of the command are not appropriate or do not exist, error is logged to the output file.
+        if (!command.valid) {
+            out.append("Some error occurred in ").append(command.type.getWord()).append(".").newLine();
+            return;
         }
-        // The user with the given ID is created and placed into the hash map containing the users.
-        else {
-            users.put(userId, new User(userId));
-            writer.write("Created user with Id " + userId + ".");
-            writer.newLine();
-        }
-    }
-    public static void followUser(String[] input) throws IOException {
-        // Users' IDs are extracted from the input array.
-        String userId1 = input[1];
-        String userId2 = input[2];
-
-        // If any of the user IDs are not appropriate, or any of the users does not exist,
-        // or the user IDs are equal or user is already following the other user, error is logged.
-        if (!(userId1.startsWith("user")) ||
-                !(userId2.startsWith("user")) ||
-                !users.containsKey(userId1) ||
-                !users.containsKey(userId2) ||
-                userId1.equals(userId2) ||
-                users.get(userId1).isFollowing(users.get(userId2))
-        ) {
-            writer.write("Some error occurred in follow_user.");
-            writer.newLine();
-        }
-        // Users are accessed by using their IDs, via the hash map.
-        // Then the first user follows the second user.
-        else {
-            User user1 = users.get(userId1);
-            User user2 = users.get(userId2);
-            user1.follow(user2);
-            writer.write(userId1 + " followed " + userId2 + ".");
-            writer.newLine();
-        }
-    }
-    public static void unfollowUser(String[] input) throws IOException {
-        // Users' IDs are extracted from the input array.
-        String userId1 = input[1];
-        String userId2 = input[2];
-
-        // If any of the user IDs are not appropriate, or any of the users does not exist,
-        // or the user IDs are equal or user is already not following the other user, error is logged.
-        if (!(userId1.startsWith("user")) ||
-                !(userId2.startsWith("user")) ||
-                !(users.containsKey(userId1)) ||
-                !(users.containsKey(userId2)) ||
-                userId1.equals(userId2) ||
-                !(users.get(userId1).isFollowing(users.get(userId2)))
-        ) {
-            writer.write("Some error occurred in unfollow_user.");
-            writer.newLine();
+        if (log != null && command.type.isMutating()) {
+            log.append(command.input);
         }
-        // The first user unfollows the second user.
-        else {
-            User user1 = users.get(userId1);
-            User user2 = users.get(userId2);
-            user1.unfollow(user2);
-            writer.write(userId1 + " unfollowed " + userId2 + ".");
-            writer.newLine();
+        switch (command.type) {
+            case CREATE_USER: {
+                out.append("Created user with Id ").append(command.user.getId()).append(".").newLine();
+                break;
+            }
+            case FOLLOW_USER: {
+                followUser(command, out);
+                break;
+            }
+            case UNFOLLOW_USER: {
+                unfollowUser(command, out);
+                break;
+            }
+            case CREATE_POST: {
+                createPost(command, out);
+                break;
+            }
+            case SEE_POST: {
+                seePost(command, out);
+                break;
+            }
+            case SEE_ALL_POSTS_FROM_USER: {
+                seeAllPostsFromUser(command, out);
+                break;
+            }
+            case TOGGLE_LIKE: {
+                toggleLike(command, out);
+                break;
+            }
+            case GENERATE_FEED: {
+                generateFeed(command, out);
+                break;
+            }
+            case SCROLL_THROUGH_FEED: {
+                scrollThroughFeed(command, out);
+                break;
+            }
+            case SORT_POSTS: {
+                sortPosts(command, out);
+                break;
+            }
+            case TRENDING_POSTS: {
+                trendingPosts(command, out);
+                break;
+            }
+        }
+    }
+
+    // Returns true if the word starts with the given prefix.
+    private static boolean startsWith(CharSequence word, String prefix) {
+        if (word.length() < prefix.length())
+            return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (word.charAt(i) != prefix.charAt(i))
+                return false;
+        }
+        return true;
+    }
+    private void resolveCreateUser(Command command) {
+        // User ID is extracted.
+        CharSequence userId = command.input.token(1);
+
+        // The user with the given ID is created and placed into the hash map containing the users,
+        // if the userID is appropriate and the user does not exist.
+        if (startsWith(userId, "user") && !users.containsKey(userId)) {
+            command.user = registerUser(userId.toString());
+            command.valid = true;
         }
     }
-    public static void createPost(String[] input) throws IOException {
+
+    /**
+     * Creates a user with the next ordinal and puts it into the hash map, for an ID which is checked to be new.
+     * @param userId is the ID of the user.
+     * @return the new user.
+     */
+    User registerUser(String userId) {
+        User user = new User(userId, users.getSize(), this);
+        if (pushMode)
+            user.enableInbox();
+        users.put(user.getId(), user);
+        return user;
+    }
+
+    // Looks up the users of a follow or unfollow command. The user IDs must be appropriate, the users must exist and be different.
+    private void resolveUserPair(Command command) {
+        // Users' IDs are extracted from the input line.
+        CharSequence userId1 = command.input.token(1);
+        CharSequence userId2 = command.input.token(2);
+
+        if (startsWith(userId1, "user") && startsWith(userId2, "user") && !userId1.equals(userId2)) {
+            command.user = users.get(userId1);
+            command.otherUser = users.get(userId2);
+            command.valid = command.user != null && command.otherUser != null;
+        }
+    }
+    private void resolveCreatePost(Command command) {
         // The needed information for creating a post is extracted.
-        String userId = input[1];
-        String postId = input[2];
-        String content = input[3];
+        CharSequence userId = command.input.token(1);
+        CharSequence postId = command.input.token(2);
+        CharSequence content = command.input.token(3);
+
+        // If the user with the given id is present and there is no post with the given id, the post is created and put into the hash map.
+        User author = users.get(userId);
+        if (author != null && !posts.containsKey(postId)) {
+            command.user = author;
+            command.post = registerPost(postId.toString(), author, content.toString());
+            command.valid = true;
+        }
+    }
+
+    /**
+     * Creates a post with the next ordinal and puts it into the hash map, for an ID which is checked to be new.
+     * The post is added to its author when the command is applied.
+     * @param postId is the ID of the post.
+     * @param author is the user who creates the post.
+     * @param content is the content of the post.
+     * @return the new post.
+     */
+    Post registerPost(String postId, User author, String content) {
+        Post post = new Post(postId, posts.getSize(), author, content);
+        posts.put(post.getId(), post);
+        return post;
+    }
+    private void followUser(Command command, OutputSink out) throws IOException {
+        User user1 = command.user;
+        User user2 = command.otherUser;
 
-        // If the user with the given id is not present or there is already a post with the given id, error is logged.
-        if (!users.containsKey(userId) || posts.containsKey(postId)) {
-            writer.write("Some error occurred in create_post.");
-            writer.newLine();
+        // If the user is already following the other user, error is logged.
+        if (user1.isFollowing(user2)) {
+            out.append("Some error occurred in follow_user.").newLine();
         }
-        // The post is created and put into the hash map, then the post is added into the user's posts data field.
+        // The first user follows the second user.
         else {
-            User author = users.get(userId);
-            Post post = new Post(postId, author, content);
-            posts.put(postId, post);
-            author.createPost(post);
-            writer.write(userId + " created a post with Id " + postId + ".");
-            writer.newLine();
+            user1.follow(user2);
+            out.append(user1.getId()).append(" followed ").append(user2.getId()).append(".").newLine();
         }
     }
-    public static void seePost(String[] input) throws IOException {
-        // User and post IDs are extracted from the array.
-        String userId = input[1];
-        String postId = input[2];
+    private void unfollowUser(Command command, OutputSink out) throws IOException {
+        User user1 = command.user;
+        User user2 = command.otherUser;
 
-        // If there does not exist such a user or such a post, error is logged.
-        if (!(users.containsKey(userId)) || !(posts.containsKey(postId))) {
-            writer.write("Some error occurred in see_post.");
-            writer.newLine();
+        // If the user is already not following the other user, error is logged.
+        if (!user1.isFollowing(user2)) {
+            out.append("Some error occurred in unfollow_user.").newLine();
         }
-        // Corresponding user and post is accessed from the hash maps, then the user sees that post.
+        // The first user unfollows the second user.
         else {
-            User user = users.get(userId);
-            Post post = posts.get(postId);
-            user.see(post);
-            writer.write(userId + " saw " + postId + ".");
-            writer.newLine();
+            user1.unfollow(user2);
+            out.append(user1.getId()).append(" unfollowed ").append(user2.getId()).append(".").newLine();
         }
     }
-    public static void seeAllPostsFromUser(String[] input) throws IOException {
-        // Users' IDs are extracted.
-        String viewerId = input[1];
-        String viewedId = input[2];
-
-        // If any of the users does not exist, error is logged.
-        if (!(users.containsKey(viewerId)) || !(users.containsKey(viewedId))) {
-            writer.write("Some error occurred in see_all_posts_from_user.");
-            writer.newLine();
+    private void createPost(Command command, OutputSink out) throws IOException {
+        // The post is added into the user's posts data field.
+        command.user.createPost(command.post);
+        MySkipList<Post> ranking = trendingPosts;
+        if (ranking != null) {
+            synchronized (ranking) {
+                ranking.insert(command.post);
+            }
         }
+        out.append(command.user.getId()).append(" created a post with Id ").append(command.post.getId()).append(".").newLine();
+    }
+    private void seePost(Command command, OutputSink out) throws IOException {
+        // The user sees the post.
+        command.user.see(command.post);
+        out.append(command.user.getId()).append(" saw ").append(command.post.getId()).append(".").newLine();
+    }
+    private void seeAllPostsFromUser(Command command, OutputSink out) throws IOException {
         // The first user sees all posts of the second user.
+        command.user.seeAllPosts(command.otherUser);
+        out.append(command.user.getId()).append(" saw all posts of ").append(command.otherUser.getId()).append(".").newLine();
+    }
+    private void toggleLike(Command command, OutputSink out) throws IOException {
+        User user = command.user;
+        Post post = command.post;
+        String userId = user.getId();
+        String postId = post.getId();
+
+        // If the user has not liked the post before, the post is liked.
+        if (!user.hasLikedPost(post)) {
+            changeLike(user, post, true);
+            out.append(userId).append(" liked ").append(postId).append(".").newLine();
+        }
+        // If the user has already liked the post before, the post is unliked.
         else {
-            User user1 = users.get(viewerId);
-            User user2 = users.get(viewedId);
-            user1.seeAllPosts(user2);
-            writer.write(viewerId + " saw all posts of " + viewedId + ".");
-            writer.newLine();
+            changeLike(user, post, false);
+            out.append(userId).append(" unliked ").append(postId).append(".").newLine();
         }
     }
-    public static void toggleLike(String[] input) throws IOException {
-        // User and post IDs are extracted.
-        String userId = input[1];
-        String postId = input[2];
+    private void generateFeed(Command command, OutputSink out) throws IOException {
+        User user = command.user;
+        String userId = user.getId();
+        int num = command.num;
 
-        // If the user or the post is not present, error is logged.
-        if (!(users.containsKey(userId)) || !(posts.containsKey(postId))) {
-            writer.write("Some error occurred in toggle_like.");
-            writer.newLine();
+        // Only the best posts that fit into the feed are collected, already sorted by their likes.
+        Post[] feed = feedCache == null || num <= 0 ? null : feedCache.get(user, num);
+        if (feed == null) {
+            feed = collectFeed(user, num);
+            if (feedCache != null && num > 0)
+                feedCache.put(user, num, feed);
         }
-        else {
-            User user = users.get(userId);
-            Post post = posts.get(postId);
 
-            // If the user has not liked the post before, the post is liked.
-            if (!user.hasLikedPost(post)) {
-                user.like(post);
-                writer.write(userId + " liked " + postId + ".");
-                writer.newLine();
+        // Logging of the feed starts.
+        out.append("Feed for ").append(userId).append(":").newLine();
+        Post post;
+
+        // Iterations are made as many times as the number of posts to be displayed.
+        for (int i=0; i < num; i++) {
+            // The post with the most likes is taken, if there exists such a post, it is logged with its information.
+            if (i < feed.length) {
+                post = feed[i];
+                out.append("Post ID: ").append(post.getId())
+                        .append(", Author: ").append(post.getAuthor().getId())
+                        .append(", Likes: ").append(post.getLikes()).newLine();
             }
-            // If the user has already liked the post before, the post is unliked.
+            // If there are no more posts left, generation of feed is stopped.
             else {
-                user.unlike(post);
-                writer.write(userId + " unliked " + postId + ".");
-                writer.newLine();
+                out.append("No more posts available for ").append(userId).append(".").newLine();
+                break;
             }
         }
     }
-    public static void generateFeed(String[] input) throws IOException {
-        // User ID and the number of posts to be shown in the feed is extracted.
-        String userId = input[1];
-        int num = Integer.parseInt(input[2]);
+    private void scrollThroughFeed(Command command, OutputSink out) throws IOException {
+        User user = command.user;
+        String userId = user.getId();
+        int num = command.num;
 
-        // If there does not exist such a user with the given ID, error is logged.
-        if (!(users.containsKey(userId))) {
-            writer.write("Some error occurred in generate_feed.");
-            writer.newLine();
-        }
-        else {
-            User user = users.get(userId);
+        // The cursor of the user is opened once the user scrolls again, and the changes after that are applied to it as they happen.
+        if (feedCursors && user.getInbox() == null)
+            user.openCursor();
 
-            // Initially, posts to be shown in the feed is added to an arraylist.
-            ArrayList<Post> postsForFeed = new ArrayList<>();
+        // The posts to scroll through are collected before any of them is seen or liked.
+        // A cached feed is used, but the feed is not cached, since seeing its posts invalidates it.
+        Post[] feed = feedCache == null || num <= 0 ? null : feedCache.get(user, num);
+        if (feed == null)
+            feed = collectFeed(user, num);
 
-            // All the posts of all the users that is being followed are added to the arraylist if they are not seen by the present user before.
-            for (User followedUser: user.getFollowings()) {
-                for (Post post: followedUser.getPosts()) {
-                    if (!user.hasSeenPost(post))
-                        postsForFeed.add(post);
-                }
-            }
-            // All these posts in the arraylist are transferred into an array containing posts.
-            Post[] feedArray = new Post[postsForFeed.size()];
-            postsForFeed.toArray(feedArray);
+        out.append(userId).append(" is scrolling through feed:").newLine();
+        Post post;
+        String postId;
 
-            // A max heap is created with these posts, so that the element with the maximum amount of likes is accessed in constant time.
-            MyMaxHeap<Post> feedHeap = new MyMaxHeap<>(feedArray);
+        // As many iterations as the number of scrolls is done.
+        for (int i = 0; i < num; i++) {
+            // The post with the most likes is taken, if there exist such a post, it is seen and liked (if the input says so).
+            if (i < feed.length) {
+                post = feed[i];
+                postId = post.getId();
+                user.see(post);
 
-            // Logging of the feed starts.
-            writer.write("Feed for " + userId + ":");
-            writer.newLine();
-            Post post;
-
-            // Iterations are made as many times as the number of posts to be displayed.
-            for (int i=0; i < num; i++) {
-                // The post with the most likes is extracted, if there exists such a post, it is logged with its information.
-                if ( (post = feedHeap.deleteMax()) != null ) {
-                    writer.write("Post ID: " + post.getId() + ", Author: " + post.getAuthor().getId() + ", Likes: " + post.getLikes());
-                    writer.newLine();
-                }
-                // If there are no more posts left, generation of feed is stopped.
-                else {
-                    writer.write("No more posts available for " + userId + ".");
-                    writer.newLine();
-                    break;
+                if (command.isLiked(i)) {
+                    changeLike(user, post, true);
+                    out.append(userId).append(" saw ").append(postId).append(" while scrolling and clicked the like button.").newLine();
+                } else {
+                    out.append(userId).append(" saw ").append(postId).append(" while scrolling.").newLine();
                 }
             }
+            // If all the posts are seen, scrolling through the feed is stopped.
+            else {
+                out.append("No more posts in feed.").newLine();
+                break;
+            }
         }
     }
-    public static void scrollThroughFeed(String[] input) throws IOException {
-        // User ID and the number of scroll operations are extracted.
-        String userId = input[1];
-        int num = Integer.parseInt(input[2]);
+    /**
+     * Collects the unseen posts of the users that the given user follows, which would come first in the user's feed.
+     * At most num posts are kept at any time, so the memory used depends on the size of the feed, not on the number of posts.
+     * The posts of every followed user are read from that user's heap, which is always kept in order.
+     * @param user is the user whose feed is collected.
+     * @param num is the number of posts that the feed can hold.
+     * @return the posts of the feed, sorted in descending order.
+     */
+    private Post[] collectFeed(User user, int num) {
+        if (num <= 0)
+            return new Post[0];
+        MyTopKHeap<Post> topPosts = new MyTopKHeap<>(num);
+        // With the metrics enabled, the seen checks are counted as well.
+        boolean measured = Metrics.isEnabled();
+        int[] checks = measured ? new int[1] : null;
+        Predicate<Post> unseen = measured ? post -> { checks[0]++; return !user.hasSeenPost(post); } : post -> !user.hasSeenPost(post);
+        int candidates = 0;
+        int[] slots = new int[64]; // The scratch array of the heap traversals, which is shared by all the followed users.
 
-        // If there does not exist such a user with the given ID, error is logged.
-        if (!users.containsKey(userId)) {
-            writer.write("Some error occurred in scroll_through_feed.");
-            writer.newLine();
+        // In the push mode, the unseen posts are already waiting in the user's inbox.
+        // Only the posts of the followed users with too many followers to push to are merged in from their own heaps.
+        if (user.getInbox() != null) {
+            user.markFeedRead();
+            candidates += user.getInbox().offerTop(topPosts, slots);
+            for (User followedUser: user.getFollowedCelebrities()) {
+                int pulled = followedUser.getPosts().offerTop(topPosts, unseen, slots);
+                feedStats.pulledPosts.add(pulled);
+                candidates += pulled;
+            }
+            feedStats.feedReads.increment();
         }
         else {
-            User user = users.get(userId);
-
-            // Every unseen post of every user that is being followed is added to an arraylist.
-            ArrayList<Post> postsForFeed = new ArrayList<>();
             for (User followedUser: user.getFollowings()) {
-                for (Post post: followedUser.getPosts()) {
-                    if (!user.hasSeenPost(post))
-                        postsForFeed.add(post);
-                }
-            }
-            // Then all these posts are transferred to an array.
-            Post[] feedArray = new Post[postsForFeed.size()];
-            postsForFeed.toArray(feedArray);
-
-            // A heap with these posts is created in order to access the post with most likes in constant time.
-            MyMaxHeap<Post> feedHeap = new MyMaxHeap<>(feedArray);
-
-            writer.write(userId + " is scrolling through feed:");
-            writer.newLine();
-            Post post;
-            String postId;
-            int isLiked;
-
-            // As many iterations as the number of scrolls is done.
-            for (int i = 0; i < num; i++) {
-                // The post with the most likes is extracted, if there exist such a user, it is seen and liked (if the input says so).
-                if ( (post = feedHeap.deleteMax()) != null ) {
-                    isLiked = Integer.parseInt(input[3 + i]);
-                    postId = post.getId();
-                    user.see(post);
-
-                    if (isLiked == 1) {
-                        user.like(post);
-                        writer.write(userId + " saw " + postId + " while scrolling and clicked the like button.");
-                        writer.newLine();
-                    } else {
-                        writer.write(userId + " saw " + postId + " while scrolling.");
-                        writer.newLine();
-                    }
-                }
-                // If all the posts are seen, scrolling through the feed is stopped.
-                else {
-                    writer.write("No more posts in feed.");
-                    writer.newLine();
-                    break;
-                }
+                candidates += followedUser.getPosts().offerTop(topPosts, unseen, slots);
             }
         }
+        if (measured)
+            Metrics.recordFeed(candidates, checks[0]);
+        return drain(topPosts);
     }
-    public static void sortPosts(String[] input) throws IOException {
-        // User ID is extracted.
-        String userId = input[1];
 
-        // If there does not exist such a user, error is logged.
-        if (!users.containsKey(userId)) {
-            writer.write("Some error occurred in sort_posts.");
-            writer.newLine();
+    // Empties the top-k heap into an array in descending order. The smallest post is removed first, so the array is filled from its end.
+    private static Post[] drain(MyTopKHeap<Post> topPosts) {
+        Post[] sorted = new Post[topPosts.getSize()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = topPosts.deleteMin();
+        }
+        return sorted;
+    }
+    private void sortPosts(Command command, OutputSink out) throws IOException {
+        User user = command.user;
+        String userId = user.getId();
+
+        // If the user has no posts, error is logged.
+        if (user.getPosts().isEmpty()) {
+            out.append("No posts from ").append(userId).append(".").newLine();
         }
         else {
-            User user = users.get(userId);
-            // If the user has no posts, error is logged.
-            if (user.getPosts().isEmpty()) {
-                writer.write("No posts from " + userId + ".");
-                writer.newLine();
+            out.append("Sorting ").append(userId).append("'s posts:").newLine();
+
+            // The posts of the user are always kept sorted, so they are logged in order without being copied.
+            for (Post post: user.getRankedPosts()) {
+                out.append(post.getId()).append(", Likes: ").append(post.getLikes()).newLine();
             }
-            else {
-                writer.write("Sorting " + userId +"'s posts:");
-                writer.newLine();
-                MyMaxHeap<Post> usersPosts = user.getPosts();
-
-                // All the posts of the user is copied into an array.
-                Post[] postsCopy = new Post[usersPosts.getSize()];
-                int i=0;
-                for (Post post: usersPosts) {
-                    postsCopy[i] = post;
-                    i++;
-                }
+        }
+    }
 
-                // A max heap is created from the user's posts, in order to make sure that all the posts are sorted.
-                MyMaxHeap<Post> posts = new MyMaxHeap<>(postsCopy);
-                Post post;
+    // Likes or unlikes the post, and moves it to its new place in the global ranking if the ranking is built.
+    private void changeLike(User user, Post post, boolean like) {
+        if (like)
+            user.like(post, trendingPosts);
+        else
+            user.unlike(post, trendingPosts);
+    }
 
-                // Delete the post with the maximum likes and log its information, until all the posts are logged.
-                while ((post = posts.deleteMax()) != null) {
-                    writer.write(post.getId() + ", Likes: " + post.getLikes());
-                    writer.newLine();
-                }
+    // Returns true if the global ranking is built, so a query does not build it.
+    boolean hasTrendingPosts() {
+        return trendingPosts != null;
+    }
+
+    /**
+     * Returns the posts with the most likes, with the ties broken by their IDs in the same way as Post.compareTo.
+     * The posts are read from the start of a ranking which is always kept sorted, so it takes O(num) time whatever the number of posts.
+     * Only the first query of all the posts sorts them, to build the global ranking.
+     * @param num is the number of posts to be returned.
+     * @param author is the user whose posts are ranked, or null to rank all the posts.
+     * @return at most num posts, sorted in descending order.
+     */
+    public Post[] getTrendingPosts(int num, User author) {
+        if (num <= 0)
+            return new Post[0];
+        if (author != null)
+            return topOf(author.getRankedPosts(), num);
+        MySkipList<Post> ranking = trendingPosts;
+        if (ranking == null) {
+            synchronized (trendingLock) {
+                if (trendingPosts == null)
+                    trendingPosts = buildTrendingPosts();
+                ranking = trendingPosts;
+            }
+        }
+        synchronized (ranking) {
+            return topOf(ranking, num);
+        }
+    }
+
+    /**
+     * Returns the rank of the post among the posts of its author, read from the sorted posts of the author in logarithmic time.
+     * @param post is the post.
+     * @return the rank, 0 for the post with the most likes, or -1 if the post is not created yet.
+     */
+    public int getPostRank(Post post) {
+        return post.getAuthor().getRankedPosts().rankOf(post);
+    }
+    private static Post[] topOf(MySkipList<Post> ranking, int num) {
+        Post[] top = new Post[Math.min(num, ranking.getSize())];
+        Iterator<Post> iterator = ranking.iterator();
+        for (int i = 0; i < top.length; i++) {
+            top[i] = iterator.next();
+        }
+        return top;
+    }
+
+    /**
+     * Builds the global ranking at once from a sorted array of all the posts.
+     * A post which is registered but not created yet, which the parallel replay can have for the later commands of its window,
+     * is not in the heap of its author yet, and it is left out until it is created.
+     * @return the ranking.
+     */
+    private MySkipList<Post> buildTrendingPosts() {
+        Post[] sortedPosts = new Post[posts.getSize()];
+        int count = 0;
+        for (Post post: posts) {
+            if (post.getAuthor().getPosts().contains(post))
+                sortedPosts[count++] = post;
+        }
+        sortedPosts = Arrays.copyOf(sortedPosts, count);
+        Arrays.sort(sortedPosts, Collections.reverseOrder());
+        return new MySkipList<>(sortedPosts);
+    }
+
+    // Drops the global ranking after the posts are restored from a snapshot or loaded in bulk. It is built again on the next query.
+    void resetTrendingPosts() {
+        trendingPosts = null;
+    }
+
+    private void trendingPosts(Command command, OutputSink out) throws IOException {
+        User author = command.user;
+        int num = command.num;
+        Post[] top = getTrendingPosts(num, author);
+
+        if (author == null)
+            out.append("Trending posts:").newLine();
+        else
+            out.append("Trending posts of ").append(author.getId()).append(":").newLine();
+        for (int i = 0; i < num; i++) {
+            if (i < top.length) {
+                Post post = top[i];
+                out.append("Post ID: ").append(post.getId())
+                        .append(", Author: ").append(post.getAuthor().getId())
+                        .append(", Likes: ").append(post.getLikes()).newLine();
+            }
+            // If there are no more posts, the ranking is stopped.
+            else {
+                out.append("No more posts available.").newLine();
+                break;
             }
         }
     }
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the commands of the input files over local socket connections, against a single ConcurrentFeedManager.
+ * A client sends one command per line, and the server answers every line with the output lines of the command followed by
+ * an empty line, so the client knows where the answer ends. An empty or unknown line is answered with the empty line alone.
+ * Every connection is handled by a thread of its own. Virtual threads are used when the Java version has them,
+ * so thousands of mostly idle connections cost little; otherwise a cached pool of platform threads is used.
+ * Usage: java FeedServer [port]
+ */
+public class FeedServer {
+    public static final int DEFAULT_PORT = 7070;
+    private static final byte[] END_OF_ANSWER = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final ConcurrentFeedManager manager = new ConcurrentFeedManager();
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        new FeedServer().serve(port);
+    }
+
+    /**
+     * Accepts connections on the loopback address until the process is stopped.
+     * @param port is the port to listen on.
+     * @throws IOException if the port cannot be bound.
+     */
+    public void serve(int port) throws IOException {
+        ExecutorService executor = newThreadPerTaskExecutor();
+        try (ServerSocket server = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress())) {
+            System.out.println("Listening on port " + server.getLocalPort() + ".");
+            while (true) {
+                Socket socket = server.accept();
+                executor.execute(() -> handle(socket));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns an executor which runs every task on a new virtual thread, or on a pooled platform thread
+     * if the Java version has no virtual threads. The method is looked up by reflection, so the code still compiles on Java 17.
+     * @return the executor.
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    // Answers the lines of a single connection until the client closes it.
+    private void handle(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            LineReader reader = new LineReader(socket.getInputStream());
+            OutputSink out = new OutputSink(new StreamTarget(socket.getOutputStream()), new byte[1 << 13]);
+            CommandLine line = new CommandLine();
+            while (reader.next(line)) {
+                manager.execute(line, out);
+                out.append(END_OF_ANSWER);
+                out.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            // A broken connection or a malformed command ends this connection only.
+            System.err.println("Connection closed: " + e);
+        }
+    }
+
+    /**
+     * Target of the output sink of a connection, which writes the buffers to the socket.
+     */
+    private static class StreamTarget implements OutputSink.Target {
+        private final OutputStream stream;
+
+        StreamTarget(OutputStream stream) {
+            this.stream = stream;
+        }
+        @Override
+        public byte[] write(byte[] buffer, int length) throws IOException {
+            stream.write(buffer, 0, length);
+            stream.flush();
+            return buffer;
+        }
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+
+    /**
+     * Reads the lines of a stream into command lines. Lines end with \n or \r\n.
+     * The bytes are read in blocks, and the bytes of a line are kept until the line is done.
+     */
+    static class LineReader {
+        private final InputStream stream;
+        private byte[] buffer = new byte[1 << 13];
+        private int start; // Index of the first byte of the next line.
+        private int end; // Number of bytes in the buffer.
+
+        LineReader(InputStream stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * Reads the next line into the given command line, which stays valid until the next call.
+         * @param line receives the words of the line.
+         * @return false if the stream is closed, a last line without a line terminator is dropped.
+         * @throws IOException if the stream cannot be read.
+         */
+        boolean next(CommandLine line) throws IOException {
+            int scanned = start;
+            while (true) {
+                for (; scanned < end; scanned++) {
+                    if (buffer[scanned] == '\n') {
+                        int lineEnd = scanned > start && buffer[scanned - 1] == '\r' ? scanned - 1 : scanned;
+                        line.set(ByteBuffer.wrap(buffer), start, lineEnd);
+                        start = scanned + 1;
+                        return true;
+                    }
+                }
+                // The rest of the line is moved to the beginning of the buffer, which grows if the line fills it.
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    scanned -= start;
+                    end -= start;
+                    start = 0;
+                }
+                if (end == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int read = stream.read(buffer, end, buffer.length - end);
+                if (read < 0) {
+                    return false;
+                }
+                end += read;
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the work done for the feeds, which are used to tune the follower threshold of the hybrid mode.
+ * Push cost is the work done at write time on the inboxes, pull cost is the work done at read time on the authors' heaps.
+ * Every engine keeps counters of its own, and they can be added to by several threads at once without losing any value.
+ */
+public class FeedStats {
+    final LongAdder pushedPosts = new LongAdder(); // Posts added to inboxes, when they are created or when a user follows their author.
+    final LongAdder removedPosts = new LongAdder(); // Posts removed from inboxes, when they are seen or when a user unfollows their author.
+    final LongAdder rerankedPosts = new LongAdder(); // Posts moved in inboxes after their likes have changed.
+    final LongAdder pulledPosts = new LongAdder(); // Posts visited in the heaps of the high-follower authors while reading feeds.
+    final LongAdder feedReads = new LongAdder(); // Feeds which are read from inboxes.
+    final LongAdder promotions = new LongAdder(); // Authors which started to be merged at read time.
+    final LongAdder demotions = new LongAdder(); // Authors which started to be pushed again.
+
+    public void reset() {
+        pushedPosts.reset();
+        removedPosts.reset();
+        rerankedPosts.reset();
+        pulledPosts.reset();
+        feedReads.reset();
+        promotions.reset();
+        demotions.reset();
+    }
+
+    // Returns the work done at write time.
+    public long getPushCost() {
+        return pushedPosts.sum() + removedPosts.sum() + rerankedPosts.sum();
+    }
+
+    // Returns the work done at read time.
+    public long getPullCost() {
+        return pulledPosts.sum();
+    }
+
+    public String report() {
+        return "Push cost: " + getPushCost() + " (" + pushedPosts.sum() + " pushed, " + removedPosts.sum() + " removed, " + rerankedPosts.sum() + " reranked)\n" +
+                "Pull cost: " + getPullCost() + " posts visited in " + feedReads.sum() + " feed reads\n" +
+                "Authors promoted to pull: " + promotions.sum() + ", demoted to push: " + demotions.sum();
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * An element of a MyIndexedMaxHeap, which remembers the slot where it is placed in the heap array.
+ * Knowing the slot allows the heap to move an element whose key has changed without searching for it.
+ */
+public interface HeapIndexed {
+    /**
+     * @return the index of the element in the heap array, or 0 if the element is not in a heap.
+     */
+    int getHeapIndex();
+
+    /**
+     * Updates the index of the element in the heap array. It is only called by the heap.
+     * @param index is the new index, 0 if the element is removed from the heap.
+     */
+    void setHeapIndex(int index);
+}
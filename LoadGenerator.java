@@ -0,0 +1,171 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts load on a running FeedServer through many local connections at the same time, and reports the throughput
+ * and the 50th, 99th and 99.9th percentiles of the latency of a command, from sending its line until its answer is read.
+ * A single connection first creates the users and their posts with a few follows each. Then every connection sends
+ * random likes, views, follows, feeds and scrolls of these users and waits for each answer before sending the next command.
+ * Usage: java LoadGenerator [port] [connections] [commands per connection] [users] [seed]
+ */
+public class LoadGenerator {
+    private static final int POSTS_PER_USER = 10;
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : FeedServer.DEFAULT_PORT;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int commandsPerConnection = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int userCount = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+
+        try (Connection setup = new Connection(port)) {
+            Random random = new Random(seed);
+            for (int i = 0; i < userCount; i++) {
+                setup.send("create_user user" + i);
+                for (int j = 0; j < POSTS_PER_USER; j++) {
+                    setup.send("create_post user" + i + " post" + i + "_" + j + " content");
+                }
+            }
+            for (int i = 0; i < userCount; i++) {
+                for (int j = 0; j < 5; j++) {
+                    setup.send("follow_user user" + i + " user" + random.nextInt(userCount));
+                }
+            }
+        }
+
+        // Every connection records the latencies of its own commands, which are merged at the end.
+        long[][] latencies = new long[connections][];
+        Throwable[] failures = new Throwable[connections];
+        ExecutorService executor = FeedServer.newThreadPerTaskExecutor();
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            int index = c;
+            executor.execute(() -> {
+                try {
+                    latencies[index] = runConnection(port, new Random(seed + index + 1), commandsPerConnection, userCount);
+                } catch (Throwable e) {
+                    failures[index] = e;
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int failed = 0;
+        for (Throwable failure: failures) {
+            if (failure != null) {
+                if (failed == 0) {
+                    failure.printStackTrace();
+                }
+                failed++;
+            }
+        }
+        long[] all = new long[connections * commandsPerConnection];
+        int count = 0;
+        for (long[] connectionLatencies: latencies) {
+            if (connectionLatencies != null) {
+                System.arraycopy(connectionLatencies, 0, all, count, connectionLatencies.length);
+                count += connectionLatencies.length;
+            }
+        }
+        Arrays.sort(all, 0, count);
+        System.out.printf("%d connections, %d failed, %d commands in %.2f s, %.0f commands per second%n",
+                connections, failed, count, seconds, count / seconds);
+        if (count > 0) {
+            System.out.printf("latency p50 %.3f ms, p99 %.3f ms, p999 %.3f ms, max %.3f ms%n",
+                    percentile(all, count, 0.50), percentile(all, count, 0.99), percentile(all, count, 0.999), all[count - 1] / 1e6);
+        }
+    }
+
+    // Returns the latency at the given fraction of the sorted latencies, in milliseconds.
+    private static double percentile(long[] sorted, int count, double fraction) {
+        int index = (int) Math.min(count - 1, Math.ceil(fraction * count) - 1);
+        return sorted[Math.max(index, 0)] / 1e6;
+    }
+
+    // Sends random commands over a new connection and returns the latency of each of them in nanoseconds.
+    private static long[] runConnection(int port, Random random, int commands, int userCount) throws IOException {
+        long[] latencies = new long[commands];
+        StringBuilder command = new StringBuilder();
+        try (Connection connection = new Connection(port)) {
+            for (int i = 0; i < commands; i++) {
+                String user = "user" + random.nextInt(userCount);
+                String otherUser = "user" + random.nextInt(userCount);
+                String post = "post" + random.nextInt(userCount) + "_" + random.nextInt(POSTS_PER_USER);
+                int choice = random.nextInt(100);
+                command.setLength(0);
+                if (choice < 40) {
+                    command.append("toggle_like ").append(user).append(' ').append(post);
+                } else if (choice < 55) {
+                    command.append("see_post ").append(user).append(' ').append(post);
+                } else if (choice < 62) {
+                    command.append("follow_user ").append(user).append(' ').append(otherUser);
+                } else if (choice < 66) {
+                    command.append("unfollow_user ").append(user).append(' ').append(otherUser);
+                } else if (choice < 86) {
+                    command.append("generate_feed ").append(user).append(' ').append(10);
+                } else if (choice < 96) {
+                    int num = 1 + random.nextInt(5);
+                    command.append("scroll_through_feed ").append(user).append(' ').append(num);
+                    for (int j = 0; j < num; j++) {
+                        command.append(' ').append(random.nextInt(2));
+                    }
+                } else {
+                    command.append("sort_posts ").append(user);
+                }
+                long sent = System.nanoTime();
+                connection.send(command.toString());
+                latencies[i] = System.nanoTime() - sent;
+            }
+        }
+        return latencies;
+    }
+
+    /**
+     * A connection to the server, which sends a command and reads its answer up to the empty line that ends it.
+     */
+    private static class Connection implements AutoCloseable {
+        private final Socket socket;
+        private final Writer writer;
+        private final BufferedReader reader;
+
+        Connection(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        // Sends the command and returns the number of lines in its answer.
+        int send(String command) throws IOException {
+            writer.write(command);
+            writer.write('\n');
+            writer.flush();
+            int lines = 0;
+            String line;
+            while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                lines++;
+            }
+            if (line == null) {
+                throw new IOException("The server closed the connection.");
+            }
+            return lines;
+        }
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -2,10 +2,152 @@ import java.io.IOException;
 
 public class Main {
     public static void main(String[] args) throws IOException {
-        if (args.length == 2) {
-            String inputFileName = args[0];
-            String outputFileName = args[1];
-            FeedManager.scanFile(inputFileName, outputFileName);
+        // The last two arguments are the input and output files, they can be preceded by options.
+        if (args.length >= 2) {
+            FeedManager manager = new FeedManager();
+            boolean printStats = false;
+            boolean pipelined = false;
+            boolean parallel = false;
+            boolean bulk = false;
+            String restoreFileName = null;
+            String snapshotFileName = null;
+            String logFileName = null;
+            int groupSize = WriteAheadLog.DEFAULT_GROUP_SIZE;
+            int cacheEntries = 0;
+            long cacheBytes = Long.MAX_VALUE;
+            for (int i = 0; i < args.length - 2; i++) {
+                switch (args[i]) {
+                    case ("--push"): {
+                        manager.setPushMode(true);
+                        break;
+                    }
+                    case ("--cursors"): {
+                        manager.setFeedCursors(true);
+                        break;
+                    }
+                    case ("--pipelined"): {
+                        pipelined = true;
+                        break;
+                    }
+                    case ("--parallel"): {
+                        parallel = true;
+                        break;
+                    }
+                    case ("--bulk"): {
+                        bulk = true;
+                        break;
+                    }
+                    case ("--stats"): {
+                        printStats = true;
+                        break;
+                    }
+                    case ("--metrics"): {
+                        Metrics.setEnabled(true);
+                        break;
+                    }
+                    default: {
+                        // The hybrid mode takes the follower threshold as its value.
+                        if (args[i].startsWith("--hybrid=")) {
+                            manager.setHybridMode(Integer.parseInt(args[i].substring("--hybrid=".length())));
+                            break;
+                        }
+                        // The state can be restored from a snapshot before the input file, and written to one after it.
+                        if (args[i].startsWith("--restore=")) {
+                            restoreFileName = args[i].substring("--restore=".length());
+                            break;
+                        }
+                        if (args[i].startsWith("--snapshot=")) {
+                            snapshotFileName = args[i].substring("--snapshot=".length());
+                            break;
+                        }
+                        // The changing commands can be written to a log, which is committed once for every group of commands.
+                        if (args[i].startsWith("--wal=")) {
+                            logFileName = args[i].substring("--wal=".length());
+                            break;
+                        }
+                        if (args[i].startsWith("--group-commit=")) {
+                            groupSize = Integer.parseInt(args[i].substring("--group-commit=".length()));
+                            break;
+                        }
+                        // The generated feeds can be cached, bounded by their number and optionally by their estimated bytes.
+                        if (args[i].startsWith("--feed-cache=")) {
+                            cacheEntries = Integer.parseInt(args[i].substring("--feed-cache=".length()));
+                            break;
+                        }
+                        if (args[i].startsWith("--feed-cache-bytes=")) {
+                            cacheBytes = Long.parseLong(args[i].substring("--feed-cache-bytes=".length()));
+                            break;
+                        }
+                        // The metrics can also be printed while the input file is being executed, every given number of seconds.
+                        if (args[i].startsWith("--metrics-interval=")) {
+                            Metrics.setEnabled(true);
+                            Metrics.startPeriodicDump(Long.parseLong(args[i].substring("--metrics-interval=".length())));
+                            break;
+                        }
+                        System.out.println("Unknown option " + args[i] + ".");
+                        return;
+                    }
+                }
+            }
+            if (parallel && !manager.isPullOnly()) {
+                System.out.println("The parallel replay works only in the pull mode without cursors.");
+                return;
+            }
+            if (parallel && logFileName != null) {
+                System.out.println("The parallel replay does not write a log.");
+                return;
+            }
+            if (parallel && cacheEntries > 0) {
+                System.out.println("The feed cache works only with a single thread applying the commands.");
+                return;
+            }
+            if (cacheEntries > 0)
+                manager.setFeedCache(new FeedCache(cacheEntries, cacheBytes));
+            String inputFileName = args[args.length - 2];
+            String outputFileName = args[args.length - 1];
+            // The input file can also be a binary command log, which is detected by its first bytes.
+            boolean binary = BinaryCommandLog.isBinary(inputFileName);
+            if (binary && (parallel || pipelined || logFileName != null)) {
+                System.out.println("A binary command log is replayed by a single thread without a log.");
+                return;
+            }
+            if (bulk && (binary || parallel || pipelined || logFileName != null)) {
+                System.out.println("The bulk load works only on a text file replayed by a single thread without a log.");
+                return;
+            }
+            // With a log, the snapshot is optional, and the commands logged after it are replayed before the input file.
+            WriteAheadLog log = null;
+            if (logFileName != null) {
+                long position = WriteAheadLog.recover(manager, restoreFileName, logFileName);
+                log = new WriteAheadLog(logFileName, position, groupSize);
+                manager.setCommandLog(log);
+            }
+            else if (restoreFileName != null)
+                Snapshot.read(manager, restoreFileName);
+            if (binary)
+                BinaryCommandLog.replay(manager, inputFileName, outputFileName);
+            else if (bulk)
+                BulkLoader.run(manager, inputFileName, outputFileName);
+            else if (parallel)
+                ParallelReplay.run(manager, inputFileName, outputFileName);
+            else if (pipelined)
+                CommandPipeline.run(manager, inputFileName, outputFileName);
+            else
+                manager.scanFile(inputFileName, outputFileName);
+            if (log != null) {
+                log.commit();
+                if (snapshotFileName != null)
+                    Snapshot.write(manager, snapshotFileName, log.position());
+                log.close();
+            }
+            else if (snapshotFileName != null)
+                Snapshot.write(manager, snapshotFileName);
+            if (printStats)
+                System.out.println(manager.getFeedStats().report());
+            if (Metrics.isEnabled())
+                System.out.println(Metrics.report());
+            if (manager.getFeedCache() != null)
+                System.out.println(manager.getFeedCache().report());
         }
     }
-}
\ No newline at end of file
+}
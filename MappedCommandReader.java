@@ -0,0 +1,87 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of an input file through a memory mapping, without decoding the bytes into characters.
+ * The file is mapped in windows, so files larger than a single mapping can be read. When a line does not fit
+ * into the rest of the window, a new window starting at that line is mapped. Lines end with \n, \r or \r\n, like BufferedReader.readLine.
+ */
+public class MappedCommandReader implements Closeable {
+    private static final long WINDOW_SIZE = 1L << 28;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private long windowStart; // Position of the window in the file.
+    private long windowSize;
+    private MappedByteBuffer window;
+    private int position; // Position of the next line in the window.
+    private final CommandLine line = new CommandLine();
+
+    public MappedCommandReader(String fileName) throws IOException {
+        channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ);
+        fileSize = channel.size();
+        windowSize = WINDOW_SIZE;
+        map(0);
+    }
+
+    // Maps the window which starts at the given position of the file.
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, fileSize - start));
+        position = 0;
+    }
+
+    /**
+     * Reads the next line.
+     * @return the words of the line, or null if the end of the file is reached. The same object is returned for every line.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public CommandLine nextLine() throws IOException {
+        return nextLine(line) ? line : null;
+    }
+
+    /**
+     * Reads the next line into the given object. The words of the line stay valid after the following lines are read,
+     * since a window which is replaced is not unmapped while the slices over it are still in use.
+     * @param line is the object which receives the words of the line.
+     * @return false if the end of the file is reached.
+     * @throws IOException if the file cannot be mapped.
+     */
+    public boolean nextLine(CommandLine line) throws IOException {
+        if (windowStart + position >= fileSize) {
+            return false;
+        }
+        while (true) {
+            int limit = window.limit();
+            boolean lastWindow = windowStart + limit == fileSize;
+            int end = position;
+            while (end < limit && window.get(end) != '\n' && window.get(end) != '\r') {
+                end++;
+            }
+            // A line which is cut by the end of the window is read again from a new window, unless the file ends there.
+            // A \r at the end of the window is also read again, since it may be followed by a \n.
+            boolean cut = end == limit || (end == limit - 1 && window.get(end) == '\r');
+            if (cut && !lastWindow) {
+                if (position == 0) {
+                    windowSize = Math.min(windowSize * 2, Integer.MAX_VALUE);
+                }
+                map(windowStart + position);
+                continue;
+            }
+            line.set(window, position, end);
+            if (end < limit) {
+                end += window.get(end) == '\r' && end + 1 < limit && window.get(end + 1) == '\n' ? 2 : 1;
+            }
+            position = end;
+            return true;
+        }
+    }
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
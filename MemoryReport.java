@@ -0,0 +1,77 @@
+import java.io.IOException;
+
+/**
+ * Reports how much memory the seen and liked post sets of all the users occupy after the given input file is processed.
+ * The compressed bitmaps which are in use are compared with the hash map from post IDs to posts that was used before,
+ * and with an open addressing hash set of post ordinals in a plain int array. The sizes are estimates, assuming 12 byte object headers
+ * and compressed references.
+ */
+public class MemoryReport {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: java MemoryReport <input file> <output file>");
+            return;
+        }
+        FeedManager manager = new FeedManager();
+        manager.scanFile(args[0], args[1]);
+
+        long entries = 0;
+        long bitmapBytes = 0;
+        long hashMapBytes = 0;
+        long intSetBytes = 0;
+        for (User user: manager.getUsers()) {
+            MyRoaringBitmap[] sets = { user.getSeenPosts(), user.getLikedPosts() };
+            for (MyRoaringBitmap set: sets) {
+                entries += set.getSize();
+                bitmapBytes += set.estimateBytes();
+                hashMapBytes += estimateHashMapBytes(set.getSize());
+                intSetBytes += estimateIntSetBytes(set.getSize());
+            }
+        }
+        System.out.println("Seen and liked posts of " + manager.getUsers().getSize() + " users, " + entries + " entries in total:");
+        System.out.println(format("MyRoaringBitmap", bitmapBytes, entries));
+        System.out.println(format("MyHashMap<String, Post>", hashMapBytes, entries));
+        System.out.println(format("int hash set", intSetBytes, entries));
+    }
+
+    private static String format(String name, long bytes, long entries) {
+        String perEntry = entries == 0 ? "-" : String.format("%.2f", (double) bytes / entries);
+        return String.format("  %-24s %,14d bytes, %s bytes per entry", name, bytes, perEntry);
+    }
+
+    /**
+     * Estimates the size of a MyHashMap with the given number of entries and the default capacity and load factor.
+     * The keys are the IDs of the posts, which are shared with the posts, so only the two arrays and the map itself are counted.
+     * @param size is the number of entries.
+     * @return the estimated number of bytes.
+     */
+    private static long estimateHashMapBytes(int size) {
+        long bytes = 48;
+        if (size > 0) {
+            int capacity = 16;
+            while (size > Math.min((int) (capacity * 0.75f), capacity - 2)) {
+                capacity *= 2;
+            }
+            bytes += 2 * MyRoaringBitmap.arrayBytes(capacity, 4);
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the size of a hash set which keeps the integers in a single int array with linear probing, like the keys of MyIntHashMap.
+     * The array starts with 8 slots and doubles once it is three quarters full, and the set itself has the array, its capacity and its size.
+     * @param size is the number of integers.
+     * @return the estimated number of bytes.
+     */
+    private static long estimateIntSetBytes(int size) {
+        long bytes = 24;
+        if (size > 0) {
+            int capacity = 8;
+            while (size >= capacity - (capacity >>> 2)) {
+                capacity *= 2;
+            }
+            bytes += MyRoaringBitmap.arrayBytes(capacity, 4);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Instrumentation of the hot paths: a latency histogram for every command type, histograms of the posts visited and
+ * the seen checks made for every feed and of the slots probed by every hash map lookup, and counters of the rehashes
+ * and heap resizes. Nothing is recorded until it is enabled, and it can be enabled and disabled at any time,
+ * so when it is off the instrumented code only pays for reading the flag.
+ * The values are not synchronized, so commands executed by several threads at once may lose a few of them.
+ */
+public class Metrics {
+    private static volatile boolean enabled;
+
+    private static final CommandType[] TYPES = CommandType.values();
+    static final MyHistogram[] latencies = new MyHistogram[TYPES.length]; // Nanoseconds of a command, by the ordinal of its type.
+    static final MyHistogram feedCandidates = new MyHistogram(); // Posts visited in the inbox and heaps while collecting a feed.
+    static final MyHistogram seenChecks = new MyHistogram(); // Posts checked against the seen posts while collecting a feed.
+    static final MyHistogram probes = new MyHistogram(); // Slots probed by a put or lookup of a hash map.
+    static long rehashes; // Hash maps whose arrays are doubled.
+    static long heapResizes; // Heaps whose arrays are enlarged.
+
+    static {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new MyHistogram();
+        }
+    }
+
+    private Metrics() { }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    public static void reset() {
+        for (MyHistogram histogram: latencies) {
+            histogram.reset();
+        }
+        feedCandidates.reset();
+        seenChecks.reset();
+        probes.reset();
+        rehashes = 0;
+        heapResizes = 0;
+    }
+
+    // Records the time of a command, when the metrics are enabled.
+    static void recordLatency(CommandType type, long nanoseconds) {
+        if (enabled)
+            latencies[type.ordinal()].record(nanoseconds);
+    }
+    static void recordFeed(int candidates, int checks) {
+        if (enabled) {
+            feedCandidates.record(candidates);
+            seenChecks.record(checks);
+        }
+    }
+    static void recordProbes(int count) {
+        if (enabled)
+            probes.record(count);
+    }
+    static void recordRehash() {
+        if (enabled)
+            rehashes++;
+    }
+    static void recordHeapResize() {
+        if (enabled)
+            heapResizes++;
+    }
+
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-24s %10s %10s %10s %10s %10s %10s%n", "Latency (us)", "count", "mean", "p50", "p99", "p99.9", "max"));
+        for (CommandType type: TYPES) {
+            MyHistogram histogram = latencies[type.ordinal()];
+            if (histogram.getCount() > 0) {
+                report.append(String.format("%-24s %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n", type.getWord(), histogram.getCount(),
+                        histogram.getMean() / 1e3, histogram.getValueAt(0.5) / 1e3, histogram.getValueAt(0.99) / 1e3,
+                        histogram.getValueAt(0.999) / 1e3, histogram.getMax() / 1e3));
+            }
+        }
+        report.append(String.format("%-24s %10s %10s %10s %10s %10s %10s%n", "Per operation", "count", "mean", "p50", "p99", "p99.9", "max"));
+        appendCounts(report, "feed candidates", feedCandidates);
+        appendCounts(report, "feed seen checks", seenChecks);
+        appendCounts(report, "hash map probes", probes);
+        report.append("Hash map rehashes: ").append(rehashes).append(", heap resizes: ").append(heapResizes);
+        return report.toString();
+    }
+    private static void appendCounts(StringBuilder report, String name, MyHistogram histogram) {
+        report.append(String.format("%-24s %10d %10.2f %10d %10d %10d %10d%n", name, histogram.getCount(), histogram.getMean(),
+                histogram.getValueAt(0.5), histogram.getValueAt(0.99), histogram.getValueAt(0.999), histogram.getMax()));
+    }
+
+    /**
+     * Starts a daemon thread which prints the report every interval, for watching a long replay while it runs.
+     * @param intervalSeconds is the time between two reports.
+     * @return the thread, which stops when it is interrupted or when the program ends.
+     */
+    public static Thread startPeriodicDump(long intervalSeconds) {
+        long start = System.nanoTime();
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(intervalSeconds * 1000);
+                    System.out.printf("Metrics after %.1f s:%n%s%n", (System.nanoTime() - start) / 1e9, report());
+                }
+            } catch (InterruptedException e) {
+                // The dump is stopped.
+            }
+        }, "metrics-dump");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
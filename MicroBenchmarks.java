@@ -0,0 +1,526 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures the hot paths of the project: MyHashMap put, get and remove with and without rehashing, MyMaxHeap insert,
+ * deleteMax and bulk construction at different sizes, and generate_feed, scroll_through_feed and sort_posts on a synthetic graph.
+ *
+ * Every benchmark runs in a JVM of its own, so the code compiled for one benchmark does not slow down the next one,
+ * and the results of two runs are comparable. A benchmark is run for a number of warm-up iterations which are not measured,
+ * and then for the measured iterations. Every iteration prepares its data first, which is not measured, and then runs about
+ * a million operations, so the timer is read rarely. The data comes from fixed seeds, so every run does the same work.
+ * For every benchmark the mean time of an operation and its standard deviation over the iterations are reported,
+ * together with the bytes allocated by an operation, which is read from the allocation counter of the thread.
+ *
+ * The results can be saved into a file, and a later run can be compared to them: a benchmark is reported as a regression
+ * if it is slower by more than 10% and by more than three standard deviations, or if it allocates more.
+ * Usage: java MicroBenchmarks [--save=FILE] [--baseline=FILE] [--no-fork] [name filter...]
+ */
+public class MicroBenchmarks {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final int OPERATIONS = 1_000_000; // Number of operations in an iteration, for every benchmark of the data structures.
+    private static final int[] SIZES = {1_000, 100_000, 1_000_000};
+    private static final long SEED = 42;
+
+    // The results of the operations are added here, so that the compiler cannot remove the operations as dead code.
+    static volatile long sink;
+
+    public static void main(String[] args) throws Exception {
+        String saveFileName = null;
+        String baselineFileName = null;
+        boolean fork = true;
+        List<String> filters = new ArrayList<>();
+        for (String arg: args) {
+            if (arg.startsWith("--run=")) {
+                // A forked JVM runs a single benchmark and prints its result.
+                System.out.println(measure(find(arg.substring("--run=".length()))));
+                return;
+            } else if (arg.startsWith("--save=")) {
+                saveFileName = arg.substring("--save=".length());
+            } else if (arg.startsWith("--baseline=")) {
+                baselineFileName = arg.substring("--baseline=".length());
+            } else if (arg.equals("--no-fork")) {
+                fork = false;
+            } else {
+                filters.add(arg);
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-32s %14s %12s %14s%n", "benchmark", "ns/op", "error", "bytes/op");
+        for (Case benchmark: cases()) {
+            if (!filters.isEmpty() && filters.stream().noneMatch(benchmark.name::contains)) {
+                continue;
+            }
+            Result result = fork ? runForked(benchmark.name) : measure(benchmark);
+            System.out.printf("%-32s %14.2f %12.2f %14.1f%n", result.name, result.mean, result.deviation, result.bytes);
+            results.add(result);
+        }
+
+        if (saveFileName != null) {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Path.of(saveFileName)))) {
+                for (Result result: results) {
+                    writer.println(result);
+                }
+            }
+        }
+        if (baselineFileName != null && compare(results, baselineFileName) > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The result of a benchmark, which is written as a line of text by a forked JVM and in a saved file.
+     */
+    private static class Result {
+        final String name;
+        final double mean; // Mean time of an operation in nanoseconds.
+        final double deviation; // Standard deviation of the mean times of the iterations.
+        final double bytes; // Bytes allocated by an operation.
+
+        Result(String name, double mean, double deviation, double bytes) {
+            this.name = name;
+            this.mean = mean;
+            this.deviation = deviation;
+            this.bytes = bytes;
+        }
+        static Result parse(String line) {
+            String[] words = line.trim().split(" ");
+            return new Result(words[0], Double.parseDouble(words[1]), Double.parseDouble(words[2]), Double.parseDouble(words[3]));
+        }
+        @Override
+        public String toString() {
+            return name + " " + mean + " " + deviation + " " + bytes;
+        }
+    }
+
+    // Runs the benchmark in a new JVM with the same class path and JVM options as this one.
+    private static Result runForked(String name) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MicroBenchmarks.class.getName());
+        command.add("--run=" + name);
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String last = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                last = line;
+            }
+        }
+        if (process.waitFor() != 0 || last == null) {
+            throw new IOException("The benchmark " + name + " failed: " + last);
+        }
+        return Result.parse(last);
+    }
+
+    /**
+     * Runs the warm-up and measured iterations of a benchmark in this JVM.
+     * @param benchmark is the benchmark to run.
+     * @return the time and the allocation of an operation.
+     */
+    static Result measure(Case benchmark) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        double[] times = new double[MEASURED_ITERATIONS];
+        double bytes = Double.MAX_VALUE;
+        for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+            benchmark.setUp();
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            sink += benchmark.run();
+            long time = System.nanoTime() - start;
+            allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+            if (i >= WARMUP_ITERATIONS) {
+                times[i - WARMUP_ITERATIONS] = (double) time / benchmark.operations;
+                // The least allocation is kept, since the counter also sees the rare allocations of the runtime itself.
+                bytes = Math.min(bytes, (double) allocated / benchmark.operations);
+            }
+        }
+        double mean = 0;
+        for (double time: times) {
+            mean += time;
+        }
+        mean /= times.length;
+        double variance = 0;
+        for (double time: times) {
+            variance += (time - mean) * (time - mean);
+        }
+        return new Result(benchmark.name, mean, Math.sqrt(variance / (times.length - 1)), bytes);
+    }
+
+    // Compares the results to a saved file, prints the regressions and returns their number.
+    private static int compare(List<Result> results, String baselineFileName) throws IOException {
+        Map<String, Result> baseline = new HashMap<>();
+        for (String line: Files.readAllLines(Path.of(baselineFileName))) {
+            if (!line.isBlank()) {
+                Result result = Result.parse(line);
+                baseline.put(result.name, result);
+            }
+        }
+        int regressions = 0;
+        for (Result result: results) {
+            Result base = baseline.get(result.name);
+            if (base == null) {
+                continue;
+            }
+            double allowed = Math.max(0.10 * base.mean, 3 * Math.max(base.deviation, result.deviation));
+            if (result.mean > base.mean + allowed) {
+                System.out.printf("REGRESSION %s: %.2f ns/op, was %.2f ns/op%n", result.name, result.mean, base.mean);
+                regressions++;
+            }
+            if (result.bytes > base.bytes + Math.max(8, 0.05 * base.bytes)) {
+                System.out.printf("REGRESSION %s: %.1f bytes/op, was %.1f bytes/op%n", result.name, result.bytes, base.bytes);
+                regressions++;
+            }
+        }
+        System.out.println(regressions == 0 ? "No regressions against " + baselineFileName + "." : regressions + " regressions.");
+        return regressions;
+    }
+
+    /**
+     * A benchmark: the data of an iteration is prepared by setUp, which is not measured, and the operations are run by run.
+     */
+    abstract static class Case {
+        final String name;
+        final int operations; // Number of operations done by run.
+
+        Case(String name, int operations) {
+            this.name = name;
+            this.operations = operations;
+        }
+
+        // Prepares the data of an iteration.
+        void setUp() {
+        }
+
+        // Runs the operations and returns a value computed from their results.
+        abstract long run();
+    }
+
+    private static Case find(String name) {
+        for (Case benchmark: cases()) {
+            if (benchmark.name.equals(name)) {
+                return benchmark;
+            }
+        }
+        throw new IllegalArgumentException("Unknown benchmark " + name + ".");
+    }
+
+    // Returns all the benchmarks. The cases only keep their data after their setUp is called, so creating them is cheap.
+    static List<Case> cases() {
+        List<Case> cases = new ArrayList<>();
+        for (int size: SIZES) {
+            addHashMapCases(cases, size);
+        }
+        for (int size: SIZES) {
+            addHeapCases(cases, size);
+        }
+        addFeedCases(cases);
+        return cases;
+    }
+
+    // Returns the IDs of users in a shuffled order, the same for every run.
+    private static String[] shuffledKeys(int size) {
+        String[] keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "user" + i;
+        }
+        Random random = new Random(SEED);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+        return keys;
+    }
+
+    // A smaller hash map is used several times in an iteration, so that every iteration has about the same number of operations.
+    private static void addHashMapCases(List<Case> cases, int size) {
+        int copies = Math.max(1, OPERATIONS / size);
+        cases.add(new Case("MyHashMap.put.rehash." + size, size * copies) {
+            String[] keys;
+            List<MyHashMap<String, String>> maps;
+            @Override
+            void setUp() {
+                keys = keys == null ? shuffledKeys(size) : keys;
+                maps = new ArrayList<>();
+                for (int i = 0; i < copies; i++) {
+                    maps.add(new MyHashMap<>(16, 0.75f, true));
+                }
+            }
+            @Override
+            long run() {
+                for (MyHashMap<String, String> map: maps) {
+                    for (String key: keys) {
+                        map.put(key, key);
+                    }
+                }
+                return maps.get(0).getSize();
+            }
+        });
+        cases.add(new Case("MyHashMap.put.presized." + size, size * copies) {
+            String[] keys;
+            List<MyHashMap<String, String>> maps;
+            @Override
+            void setUp() {
+                keys = keys == null ? shuffledKeys(size) : keys;
+                maps = new ArrayList<>();
+                for (int i = 0; i < copies; i++) {
+                    MyHashMap<String, String> map = new MyHashMap<>(16, 0.75f, true);
+                    map.ensureCapacity(size);
+                    maps.add(map);
+                }
+            }
+            @Override
+            long run() {
+                for (MyHashMap<String, String> map: maps) {
+                    for (String key: keys) {
+                        map.put(key, key);
+                    }
+                }
+                return maps.get(0).getSize();
+            }
+        });
+        cases.add(new Case("MyHashMap.get." + size, size * copies) {
+            String[] keys;
+            MyHashMap<String, String> map;
+            @Override
+            void setUp() {
+                if (map == null) {
+                    keys = shuffledKeys(size);
+                    map = new MyHashMap<>(16, 0.75f, true);
+                    for (String key: shuffledKeys(size)) {
+                        map.put(key, key);
+                    }
+                }
+            }
+            @Override
+            long run() {
+                long found = 0;
+                for (int i = 0; i < copies; i++) {
+                    for (String key: keys) {
+                        found += map.get(key).length();
+                    }
+                }
+                return found;
+            }
+        });
+        cases.add(new Case("MyHashMap.remove." + size, size * copies) {
+            String[] keys;
+            List<MyHashMap<String, String>> maps;
+            @Override
+            void setUp() {
+                keys = keys == null ? shuffledKeys(size) : keys;
+                maps = new ArrayList<>();
+                for (int i = 0; i < copies; i++) {
+                    MyHashMap<String, String> map = new MyHashMap<>(16, 0.75f, true);
+                    for (String key: keys) {
+                        map.put(key, key);
+                    }
+                    maps.add(map);
+                }
+            }
+            @Override
+            long run() {
+                for (MyHashMap<String, String> map: maps) {
+                    for (String key: keys) {
+                        map.remove(key);
+                    }
+                }
+                return maps.get(0).getSize();
+            }
+        });
+    }
+
+    // Returns random boxed integers, the same for every run. They are boxed before the measurement.
+    private static Integer[] randomValues(int size) {
+        Random random = new Random(SEED);
+        Integer[] values = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextInt();
+        }
+        return values;
+    }
+
+    private static void addHeapCases(List<Case> cases, int size) {
+        int copies = Math.max(1, OPERATIONS / size);
+        cases.add(new Case("MyMaxHeap.insert." + size, size * copies) {
+            Integer[] values;
+            List<MyMaxHeap<Integer>> heaps;
+            @Override
+            void setUp() {
+                values = values == null ? randomValues(size) : values;
+                heaps = new ArrayList<>();
+                for (int i = 0; i < copies; i++) {
+                    heaps.add(new MyMaxHeap<>());
+                }
+            }
+            @Override
+            long run() {
+                for (MyMaxHeap<Integer> heap: heaps) {
+                    for (Integer value: values) {
+                        heap.insert(value);
+                    }
+                }
+                return heaps.get(0).findMax();
+            }
+        });
+        cases.add(new Case("MyMaxHeap.deleteMax." + size, size * copies) {
+            Integer[] values;
+            List<MyMaxHeap<Integer>> heaps;
+            @Override
+            void setUp() {
+                values = values == null ? randomValues(size) : values;
+                heaps = new ArrayList<>();
+                for (int i = 0; i < copies; i++) {
+                    heaps.add(new MyMaxHeap<>(values));
+                }
+            }
+            @Override
+            long run() {
+                long total = 0;
+                for (MyMaxHeap<Integer> heap: heaps) {
+                    while (!heap.isEmpty()) {
+                        total += heap.deleteMax();
+                    }
+                }
+                return total;
+            }
+        });
+        cases.add(new Case("MyMaxHeap.build." + size, size * copies) {
+            Integer[] values;
+            @Override
+            void setUp() {
+                values = values == null ? randomValues(size) : values;
+            }
+            @Override
+            long run() {
+                long total = 0;
+                for (int i = 0; i < copies; i++) {
+                    total += new MyMaxHeap<>(values).findMax();
+                }
+                return total;
+            }
+        });
+    }
+
+    static final int FEED_USERS = 5_000;
+    private static final int FEED_POSTS_PER_USER = 20;
+    private static final int FEED_FOLLOWS_PER_USER = 30;
+    private static final int FEED_LIKES = 200_000;
+    private static final int FEED_COMMANDS = 20_000;
+
+    /**
+     * Builds a synthetic graph by executing commands: the users, their posts, random follows where popular users are followed
+     * more, and random likes. The output of the commands is dropped.
+     * @return the manager holding the graph.
+     */
+    static FeedManager buildGraph() {
+        FeedManager manager = new FeedManager();
+        OutputSink out = new OutputSink();
+        manager.setOutput(out);
+        CommandLine line = new CommandLine();
+        Random random = new Random(SEED);
+        try {
+            for (int i = 0; i < FEED_USERS; i++) {
+                execute(manager, line, out, "create_user user" + i);
+            }
+            for (int i = 0; i < FEED_USERS; i++) {
+                for (int j = 0; j < FEED_POSTS_PER_USER; j++) {
+                    execute(manager, line, out, "create_post user" + i + " post" + i + "_" + j + " content");
+                }
+                for (int j = 0; j < FEED_FOLLOWS_PER_USER; j++) {
+                    int followed = (int) (FEED_USERS * Math.pow(random.nextDouble(), 2));
+                    execute(manager, line, out, "follow_user user" + i + " user" + followed);
+                }
+            }
+            for (int i = 0; i < FEED_LIKES; i++) {
+                execute(manager, line, out, "toggle_like user" + random.nextInt(FEED_USERS)
+                        + " post" + random.nextInt(FEED_USERS) + "_" + random.nextInt(FEED_POSTS_PER_USER));
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return manager;
+    }
+    private static void execute(FeedManager manager, CommandLine line, OutputSink out, String command) throws IOException {
+        line.set(command);
+        manager.execute(line);
+        out.reset();
+    }
+
+    // Parses the random commands of a feed benchmark before the measurement.
+    private static CommandLine[] feedCommands(String format, int seed) {
+        Random random = new Random(SEED + seed);
+        CommandLine[] lines = new CommandLine[FEED_COMMANDS];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = new CommandLine();
+            lines[i].set(String.format(format, random.nextInt(FEED_USERS)));
+        }
+        return lines;
+    }
+
+    /**
+     * A benchmark which executes commands on the synthetic graph through FeedManager.execute, with their output in memory.
+     * A benchmark which changes the graph builds it again for every iteration.
+     */
+    private static class FeedCase extends Case {
+        private final String format;
+        private final boolean changesGraph;
+        private FeedManager manager;
+        private final OutputSink out = new OutputSink();
+        private CommandLine[] lines;
+
+        FeedCase(String name, String format, boolean changesGraph) {
+            super(name, FEED_COMMANDS);
+            this.format = format;
+            this.changesGraph = changesGraph;
+        }
+        @Override
+        void setUp() {
+            if (manager == null || changesGraph) {
+                manager = buildGraph();
+                manager.setOutput(out);
+            }
+            if (lines == null) {
+                lines = feedCommands(format, name.hashCode());
+            }
+        }
+        @Override
+        long run() {
+            long written = 0;
+            try {
+                for (CommandLine line: lines) {
+                    manager.execute(line);
+                    written += out.size();
+                    out.reset();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return written;
+        }
+    }
+
+    private static void addFeedCases(List<Case> cases) {
+        cases.add(new FeedCase("FeedManager.generateFeed", "generate_feed user%d 10", false));
+        cases.add(new FeedCase("FeedManager.scrollThroughFeed", "scroll_through_feed user%d 5 1 0 0 1 0", true));
+        cases.add(new FeedCase("FeedManager.sortPosts", "sort_posts user%d", false));
+    }
+}
@@ -2,168 +2,333 @@ import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 /**
- * Hash map using open hashing as collision resolution strategy.
+ * Hash map using open addressing with linear probing as collision resolution strategy.
+ * Keys and values are stored in two parallel arrays, so no entry object is allocated for a put.
+ * The capacity is always a power of two, so the slot of a key is found with a bit mask instead of a division.
+ * The arrays are allocated on the first put, which keeps the maps that stay empty as small as possible.
+ * In the incremental resize mode, a rehash does not move all the entries at once. The old arrays are kept
+ * next to the new ones and every put or remove moves only a few slots, so no single operation pays for the whole table.
+ * Like the maps of the standard library, get, containsKey and remove accept any object as the key to search for.
+ * The given key is compared with the stored keys by its own equals method, so a key like a view over the bytes of an ID
+ * can find the entry of the equal String key without the String being created, as long as it has the same hash code.
  * @param <K> the key of the entries.
  * @param <V> the value of the entries.
  */
 public class MyHashMap<K, V> implements Iterable<V>{
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final int MIGRATION_STEPS = 8; // Number of old slots moved by each operation in the incremental mode.
+    private static final Object MOVED = new Object(); // Value of an old slot whose entry is moved or removed.
 
-    // A nested entry class is defined in order to store key-value pairs in the hash map.
-    private static class Entry<K, V> {
-        K key;
-        V value;
-
-        // Each entry stores the next entry as if it is an element of a linked list.
-        Entry<K, V> next;
-        Entry(K key, V value){
-            this.key = key;
-            this.value = value;
-            this.next = null;
-        }
-    }
-    private Entry<K, V>[] table; // The array that is storing the entries.
-    private int capacity; // The capacity of the hash table.
+    private K[] keys; // The keys of the entries, null for an empty slot.
+    private V[] values; // The value of each entry, stored at the same slot as its key.
+    private int capacity; // The capacity of the hash table, always a power of two.
     private int size; // Number of entries in the hash map.
+    private int threshold; // When the size exceeds this number, the hash map is rehashed.
     private final float loadFactorThreshold; // Threshold of load factor. When it is exceeded, the hash map is rehashed.
 
-    public MyHashMap(int initialCapacity, float loadFactor){
-        this.capacity = initialCapacity;
-        this.loadFactorThreshold = loadFactor;
+    // The arrays which are being emptied during an incremental rehash, null if there is no rehash in progress.
+    // Their keys are never cleared, so that the probe sequences of the entries which are not moved yet stay unbroken.
+    private final boolean incrementalResize;
+    private K[] oldKeys;
+    private V[] oldValues;
+    private int oldCapacity;
+    private int migrationIndex; // The next old slot to be moved.
+
+    public MyHashMap(int initialCapacity, float loadFactor, boolean incrementalResize){
+        // The load factor is kept below one, so that there is always an empty slot which ends the probing.
+        this.loadFactorThreshold = Math.min(Math.max(loadFactor, 0.1f), 0.9f);
+        this.capacity = tableSizeFor(initialCapacity);
         this.size = 0;
-        table = (Entry<K, V>[])(new Entry[capacity]);
+        this.threshold = thresholdFor(capacity);
+        this.incrementalResize = incrementalResize;
+    }
+    public MyHashMap(int initialCapacity, float loadFactor){
+        this(initialCapacity, loadFactor, false);
     }
     public MyHashMap(){
-        this(17, 0.75f);
+        this(16, 0.75f);
     }
 
     /**
-     * This method hashes the given entry's key into a number.
+     * This method hashes the given key and brings the hash value into the range of the hash table.
+     * The bits of the original hash value are mixed first, since keys that differ only in their high bits,
+     * or that have consecutive hash codes, would otherwise be placed into the same cluster of slots.
      * @param key is the corresponding entry's key.
-     * @return an integer representing at which to place the element.
+     * @param capacity is the capacity of the table to be searched.
+     * @return an integer representing at which slot to start searching for the key.
      */
-    private int hash(K key){
+    private static int hash(Object key, int capacity){
         if (key == null) {
             throw new IllegalArgumentException("Null key.");
         }
-        // The original hash value is brought into the range of the hash table.
-        int originalHash = key.hashCode();
-        int hash = originalHash % capacity;
-        if (hash < 0) {
-            hash += capacity;
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (capacity - 1);
+    }
+    private int hash(Object key){
+        return hash(key, capacity);
+    }
+
+    /**
+     * Finds the slot of the given key.
+     * @param key is the key to be searched for.
+     * @return the slot of the key, or -1 if the key is not in the hash map.
+     */
+    private int indexOf(Object key){
+        int index = hash(key);
+        if (keys == null) {
+            return -1;
+        }
+        // Slots are probed one after the other until the key or an empty slot is found.
+        K currentKey;
+        int probes = 1;
+        while ((currentKey = keys[index]) != null) {
+            if (key.equals(currentKey)) {
+                Metrics.recordProbes(probes);
+                return index;
+            }
+            index = (index + 1) & (capacity - 1);
+            probes++;
         }
-        return hash;
+        Metrics.recordProbes(probes);
+        return -1;
+    }
+
+    /**
+     * Finds the slot of the given key in the old arrays, if the entry has not been moved yet.
+     * @param key is the key to be searched for.
+     * @return the old slot of the key, or -1 if the key is not waiting in the old arrays.
+     */
+    private int oldIndexOf(Object key){
+        if (oldKeys == null) {
+            return -1;
+        }
+        int index = hash(key, oldCapacity);
+        K currentKey;
+        while ((currentKey = oldKeys[index]) != null) {
+            if (key.equals(currentKey)) {
+                return oldValues[index] == MOVED ? -1 : index;
+            }
+            index = (index + 1) & (oldCapacity - 1);
+        }
+        return -1;
     }
     public void put(K key, V value){
+        if (oldKeys != null) {
+            migrate();
+            // An entry which is still in the old arrays is taken over by the new arrays.
+            int oldIndex = oldIndexOf(key);
+            if (oldIndex >= 0) {
+                oldValues[oldIndex] = moved();
+                size--;
+            }
+        }
         int index = hash(key);
-        Entry<K, V> currentEntry = table[index];
+        if (keys == null) {
+            allocate();
+        }
 
-        // The linked list is traversed until the entry with the corresponding key is found,
-        // if it exists, its value is updated.
-        while (currentEntry != null) {
-            if (currentEntry.key.equals(key)) {
-                currentEntry.value = value;
+        // Slots are probed until the key is found, in which case its value is updated, or until an empty slot is found.
+        K currentKey;
+        int probes = 1;
+        while ((currentKey = keys[index]) != null) {
+            if (currentKey.equals(key)) {
+                values[index] = value;
+                Metrics.recordProbes(probes);
                 return;
             }
-            currentEntry = currentEntry.next;
+            index = (index + 1) & (capacity - 1);
+            probes++;
         }
-        
-        Entry<K, V> newEntry = new Entry<>(key, value);
-        newEntry.next = table[index];
-        table[index] = newEntry;
+        Metrics.recordProbes(probes);
+        keys[index] = key;
+        values[index] = value;
         size++;
 
         // If load factor exceeds the threshold, hash map is rehashed.
-        if((float)size / capacity >= loadFactorThreshold){
-            rehash();
+        if (size > threshold) {
+            if (incrementalResize) {
+                startRehash();
+            } else {
+                rehash();
+            }
         }
     }
-    public V get(K key){
-        int index = hash(key);
-        Entry<K, V> currentEntry = table[index];
-
-        // The linked list is traversed until the entry with the corresponding key is found, then its value is returned.
-        while (currentEntry != null) {
-            if (currentEntry.key.equals(key)) {
-                return currentEntry.value;
-            }
-            currentEntry = currentEntry.next;
+    public V get(Object key){
+        int index = indexOf(key);
+        if (index < 0) {
+            int oldIndex = oldIndexOf(key);
+            return oldIndex < 0 ? null : oldValues[oldIndex]; // Null if no entry with the corresponding key is found.
         }
-        return null; // If no entry with the corresponding key is found.
+        return values[index];
     }
-    public void remove(K key){
-        int index = hash(key);
-        Entry<K, V> currentEntry = table[index];
-        Entry<K, V> previousEntry = null;
-
-        // The linked list is traversed until the entry with the corresponding key is found.
-        while (currentEntry != null) {
-            if (currentEntry.key.equals(key)) {
-                // If it is the first element of the list, the second element becomes the first one.
-                if (previousEntry == null) {
-                    table[index] = currentEntry.next;
-                }
-                // It is removed from the list by connecting the previous entry with the next one.
-                else {
-                    previousEntry.next = currentEntry.next;
-                }
+    public void remove(Object key){
+        if (oldKeys != null) {
+            migrate();
+            int oldIndex = oldIndexOf(key);
+            if (oldIndex >= 0) {
+                oldValues[oldIndex] = moved();
                 size--;
                 return;
             }
-            previousEntry = currentEntry;
-            currentEntry = currentEntry.next;
         }
-    }
-    public boolean containsKey(K key) {
-        int index = hash(key);
-        Entry<K, V> currentEntry = table[index];
-        
-        while (currentEntry != null) {
-            if (currentEntry.key.equals(key)) {
-                return true;
+        int index = indexOf(key);
+        if (index < 0) {
+            return;
+        }
+        size--;
+
+        // Instead of leaving a marker behind, the following entries of the same cluster are shifted back into the hole,
+        // as long as that does not move them before their own starting slot. This keeps every probe sequence unbroken.
+        int mask = capacity - 1;
+        int hole = index;
+        int next = (hole + 1) & mask;
+        K nextKey;
+        while ((nextKey = keys[next]) != null) {
+            int home = hash(nextKey);
+            // The entry can fill the hole if its starting slot is not in the cyclic range (hole, next].
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = nextKey;
+                values[hole] = values[next];
+                hole = next;
             }
-            currentEntry = currentEntry.next;
+            next = (next + 1) & mask;
         }
-        return false;
+        keys[hole] = null;
+        values[hole] = null;
+    }
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0 || oldIndexOf(key) >= 0;
+    }
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Makes room for the given number of entries at once, so that no rehash happens while they are put.
+     * A rehash which is in progress is finished first.
+     * @param expectedSize is the number of entries that the hash map is expected to hold.
+     */
+    public void ensureCapacity(int expectedSize){
+        while (oldKeys != null) {
+            migrate();
+        }
+        int needed = tableSizeFor((int) Math.min((long) (expectedSize / loadFactorThreshold) + 2, MAXIMUM_CAPACITY));
+        if (keys == null) {
+            // The arrays are not allocated yet, so they are simply allocated with the larger capacity on the first put.
+            capacity = Math.max(capacity, needed);
+            threshold = thresholdFor(capacity);
+            return;
+        }
+        while (capacity < needed && capacity < MAXIMUM_CAPACITY) {
+            rehash();
+        }
+    }
+    private void allocate(){
+        keys = newArray(capacity);
+        values = newArray(capacity);
+    }
+
+    // The arrays only ever hold keys and values, or the MOVED marker among the values, so arrays of objects can be used for them.
+    @SuppressWarnings("unchecked")
+    private static <T> T[] newArray(int length) {
+        return (T[]) new Object[length];
+    }
+    @SuppressWarnings("unchecked")
+    private static <T> T moved() {
+        return (T) MOVED;
     }
     private void rehash(){
+        if (capacity == MAXIMUM_CAPACITY) {
+            return;
+        }
+        Metrics.recordRehash();
         int oldCapacity = capacity;
-        // New capacity is chosen as the next prime number greater than twice of the old capacity.
-        capacity = nextPrime(2 * oldCapacity);
-        Entry<K, V>[] oldTable = table;
-
-        // Create a new table with this updated capacity.
-        table = (Entry<K, V>[])(new Entry[capacity]);
-        size = 0; // Reset the size of the table and then re-insert every entry to recount.
-
-        // Re-insert all entries into the new table.
-        for(int i = 0; i < oldCapacity; i++) {
-            Entry<K, V> currentEntry = oldTable[i];
-            while (currentEntry != null) {
-                put(currentEntry.key, currentEntry.value);
-                currentEntry = currentEntry.next;
-                size++;
+        K[] oldKeys = keys;
+        V[] oldValues = values;
+
+        // Create new arrays with twice the capacity.
+        capacity = 2 * oldCapacity;
+        threshold = thresholdFor(capacity);
+        allocate();
+
+        // Move all entries into the new arrays. The keys are known to be distinct, so only an empty slot is searched for.
+        int mask = capacity - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            K key = oldKeys[i];
+            if (key != null) {
+                int index = hash(key);
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
             }
         }
     }
-    public static boolean isPrime(int number) {
-        if (number <= 1)
-            return false;
-        if (number == 2)
-            return true;
-        if (number % 2 == 0)
-            return false;
-        int sqrt = (int) Math.sqrt(number);
-        for (int i = 3; i <= sqrt; i += 2) {
-            if (number % i == 0)
-                return false;
+
+    /**
+     * Starts an incremental rehash. The current arrays become the old arrays, and new arrays with twice the capacity
+     * are allocated. The entries are moved into the new arrays little by little by the following operations.
+     */
+    private void startRehash(){
+        if (capacity == MAXIMUM_CAPACITY) {
+            return;
+        }
+        // If the previous rehash has not finished yet, it is finished first.
+        while (oldKeys != null) {
+            migrate();
+        }
+        Metrics.recordRehash();
+        oldKeys = keys;
+        oldValues = values;
+        oldCapacity = capacity;
+        migrationIndex = 0;
+        capacity = 2 * capacity;
+        threshold = thresholdFor(capacity);
+        allocate();
+    }
+
+    /**
+     * Moves the entries of the next few old slots into the new arrays. Once all the old slots are visited, the old arrays are dropped.
+     * The capacity is doubled by a rehash, so the old slots run out well before the new arrays reach the threshold.
+     */
+    private void migrate(){
+        int mask = capacity - 1;
+        int end = Math.min(migrationIndex + MIGRATION_STEPS, oldCapacity);
+        for (; migrationIndex < end; migrationIndex++) {
+            K key = oldKeys[migrationIndex];
+            V value = oldValues[migrationIndex];
+            if (key != null && value != MOVED) {
+                // The key cannot be in the new arrays, since a put of that key would have marked the old slot as moved.
+                int index = hash(key);
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = value;
+                oldValues[migrationIndex] = moved();
+            }
         }
-        return true;
+        if (migrationIndex == oldCapacity) {
+            oldKeys = null;
+            oldValues = null;
+            oldCapacity = 0;
+        }
+    }
+
+    // Returns the number of entries that the given capacity can hold. At least one slot is left empty even for a tiny capacity,
+    // since the arrays of an incremental rehash stop growing while their entries are being moved.
+    private int thresholdFor(int capacity) {
+        return Math.min((int) (capacity * loadFactorThreshold), capacity - 2);
     }
-    public static int nextPrime(int number) {
-        while (!isPrime(number)) {
-            number++;
+
+    // Returns the smallest power of two which is not smaller than the given number.
+    private static int tableSizeFor(int number) {
+        int capacity = 2;
+        while (capacity < number && capacity < MAXIMUM_CAPACITY) {
+            capacity <<= 1;
         }
-        return number;
+        return capacity;
     }
     @Override
     public Iterator<V> iterator() {
@@ -172,38 +337,40 @@ public class MyHashMap<K, V> implements Iterable<V>{
 
     /**
      * A hash map iterator is defined in order to traverse through the hash map.
+     * During an incremental rehash, the entries which are still waiting in the old arrays are visited after the new arrays.
      */
     private class HashMapIterator implements Iterator<V> {
-        private int currentListIndex; // The index of the current linked list.
-        private Entry<K, V> currentEntry; // Current entry in the linked list.
+        private int currentIndex; // The index of the next occupied slot.
+        private boolean inOldArrays; // True once the iterator has passed the new arrays.
         public HashMapIterator() {
-            this.currentListIndex = 0;
-            this.currentEntry = null;
-            nextNonEmptyList();
+            this.currentIndex = 0;
+            this.inOldArrays = false;
+            nextOccupiedSlot();
         }
 
         /**
-         * Advances to the next linked list which is not empty.
+         * Advances to the next slot which is not empty.
          */
-        private void nextNonEmptyList() {
-            while (currentListIndex < capacity) {
-                if (table[currentListIndex] != null) {
-                    currentEntry = table[currentListIndex];
-                    break;
+        private void nextOccupiedSlot() {
+            if (!inOldArrays) {
+                while (keys != null && currentIndex < capacity && keys[currentIndex] == null) {
+                    currentIndex++;
+                }
+                if (keys != null && currentIndex < capacity) {
+                    return;
                 }
-                currentListIndex++;
+                inOldArrays = true;
+                currentIndex = migrationIndex;
             }
-            if (currentListIndex >= capacity) {
-                currentEntry = null;
+            while (oldKeys != null && currentIndex < oldCapacity &&
+                    (oldKeys[currentIndex] == null || oldValues[currentIndex] == MOVED)) {
+                currentIndex++;
             }
         }
 
         @Override
         public boolean hasNext() {
-            if (currentEntry != null) {
-                return true;
-            }
-            return false;
+            return inOldArrays ? oldKeys != null && currentIndex < oldCapacity : true;
         }
 
         @Override
@@ -212,15 +379,9 @@ public class MyHashMap<K, V> implements Iterable<V>{
                 throw new NoSuchElementException("No more elements.");
             }
 
-            V value = currentEntry.value;
-
-            if (currentEntry.next != null) {
-                currentEntry = currentEntry.next;
-            } else {
-                currentListIndex++;
-                currentEntry = null;
-                nextNonEmptyList();
-            }
+            V value = inOldArrays ? oldValues[currentIndex] : values[currentIndex];
+            currentIndex++;
+            nextOccupiedSlot();
             return value;
         }
     }
@@ -0,0 +1,90 @@
+import java.util.Arrays;
+
+/**
+ * Histogram of non-negative long values with logarithmic buckets, in the way of an HDR histogram.
+ * The values below 16 have a bucket each, and every power of two above them is split into 16 buckets of equal width,
+ * so a value is known within about 6% of it whatever its size. The buckets are a fixed array of counts,
+ * so recording a value takes a few bit operations and allocates nothing.
+ * The counts are not synchronized: if several threads record into the same histogram, a few values may be lost.
+ */
+public class MyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count; // Number of recorded values.
+    private long sum; // Sum of the recorded values.
+    private long max; // Largest recorded value.
+
+    // Returns the bucket of the value: the position of its highest bit, and the next bits below it.
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Returns the smallest value which falls into the bucket.
+    private static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int highestBit = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (highestBit - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Records a value. A negative value is recorded as 0.
+     * @param value is the value to be recorded.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        if (value > max)
+            max = value;
+    }
+
+    public long getCount() {
+        return count;
+    }
+    public long getMax() {
+        return max;
+    }
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the value at the given fraction of the recorded values, that is the highest value of the bucket
+     * which holds that fraction, but not more than the largest recorded value.
+     * @param fraction is the fraction of the values, from 0 to 1.
+     * @return the value, or 0 if no value is recorded.
+     */
+    public long getValueAt(double fraction) {
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                long highest = bucket + 1 < BUCKETS ? lowestValueOf(bucket + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(highest, max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+}
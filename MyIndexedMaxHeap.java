@@ -0,0 +1,260 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Max heap whose elements know their own slots in the heap array.
+ * When the key of an element changes, the element is moved up or down from its slot in logarithmic time,
+ * so the heap order property holds all the time and the heap never needs to be rebuilt.
+ * An element can be in only one indexed heap at a time.
+ * @param <E> the type of the elements.
+ */
+public class MyIndexedMaxHeap<E extends Comparable<? super E> & HeapIndexed> implements Iterable<E> {
+    private static final int DEFAULT_CAPACITY = 15;
+    private int currentSize; // Number of elements in the heap.
+    private E[] array; // The heap array where all the elements are stored, starting from index 1.
+    public MyIndexedMaxHeap( ) { this( DEFAULT_CAPACITY ); }
+    public MyIndexedMaxHeap( int capacity ) {
+        currentSize = 0;
+        array = newArray( capacity + 1 );
+    }
+
+    /**
+     * This constructor accepts an array of elements as argument and
+     * makes sure they satisfy the heap order property after this initialisation.
+     * @param items is the array consisting of the items to be placed in the heap.
+     */
+    public MyIndexedMaxHeap( E[] items ) {
+        currentSize = items.length;
+        array = newArray( ( currentSize + 2 ) * 11 / 10 );
+
+        int i = 1;
+        for( E item : items ) {
+            place( item, i );
+            i++;
+        }
+        buildHeap( );
+    }
+
+    public void insert( E x ) {
+        if ( currentSize == array.length - 1 )
+            enlargeArray( array.length * 2 + 1 );
+
+        currentSize++;
+        place( x, currentSize );
+        percolateUp( currentSize );
+    }
+
+    // The array only ever holds elements of type E, so an array of comparables can be used as an array of E.
+    @SuppressWarnings( "unchecked" )
+    private static <E> E[] newArray( int length ) {
+        return ( E[] ) new Comparable<?>[ length ];
+    }
+    private void enlargeArray( int newSize ) {
+        Metrics.recordHeapResize( );
+        E[] old = array;
+        array = newArray( newSize );
+        for( int i = 0; i < old.length; i++ )
+            array[ i ] = old[ i ];
+    }
+    public E findMax( ) {
+        if( isEmpty( ) )
+            return null;
+        return array[ 1 ];
+    }
+    public E deleteMax( ) {
+        if( isEmpty( ) )
+            return null;
+
+        E maxItem = findMax( );
+        removeAt( 1 );
+        return maxItem;
+    }
+
+    /**
+     * Returns the element at the given slot of the heap array. The element at slot i is never smaller than
+     * the elements at slots 2i and 2i+1, which allows the heap to be traversed from the top without being modified.
+     * @param index is the slot, between 1 and the size of the heap.
+     * @return the element at that slot.
+     */
+    public E get( int index ) {
+        if ( index < 1 || index > currentSize )
+            throw new IndexOutOfBoundsException( "No element at slot " + index + "." );
+        return array[ index ];
+    }
+
+    /**
+     * Offers the greatest elements which pass the filter to the given top-k heap, without modifying this heap.
+     * @param topK is the top-k heap which collects the elements.
+     * @param filter decides which elements can be offered. The elements which are filtered out are still traversed.
+     * @param slots is a scratch array of at least 64 slots, which holds the slots waiting to be visited. It is reused by the caller.
+     * @return the number of elements which are visited.
+     */
+    public int offerTop( MyTopKHeap<E> topK, Predicate<? super E> filter, int[] slots ) {
+        return offerTop( topK, element -> element, filter, slots );
+    }
+
+    /**
+     * Offers the values of the greatest elements which pass the filter to the given top-k heap, without modifying this heap.
+     * The heap is traversed from the top. Since no element is greater than its parent, once an element
+     * cannot get into the top-k heap, none of the elements below it can, so they are skipped.
+     * @param topK is the top-k heap which collects the values.
+     * @param view gives the value of an element, which must be ordered in the same way as the elements, such as the post of an entry.
+     * @param filter decides which values can be offered. The elements whose values are filtered out are still traversed.
+     * @param slots is a scratch array of at least 64 slots, which holds the slots waiting to be visited. It is reused by the caller.
+     * @return the number of elements which are visited.
+     */
+    public <T extends Comparable<? super T>> int offerTop( MyTopKHeap<T> topK, Function<? super E, ? extends T> view,
+                                                          Predicate<? super T> filter, int[] slots ) {
+        int visited = 0;
+        if ( isEmpty( ) )
+            return visited;
+        // At most one sibling per level is waiting at any time, so the slots never outgrow the scratch array.
+        int top = 0;
+        slots[ top++ ] = 1;
+        while ( top > 0 ) {
+            int slot = slots[ --top ];
+            T value = view.apply( array[ slot ] );
+            visited++;
+            if ( topK.isFull( ) && value.compareTo( topK.findMin( ) ) < 0 )
+                continue;
+            if ( filter.test( value ) )
+                topK.offer( value );
+            if ( 2 * slot + 1 <= currentSize )
+                slots[ top++ ] = 2 * slot + 1;
+            if ( 2 * slot <= currentSize )
+                slots[ top++ ] = 2 * slot;
+        }
+        return visited;
+    }
+
+    // Returns true if the element is placed in this heap.
+    public boolean contains( E x ) {
+        int index = x.getHeapIndex( );
+        return index > 0 && index <= currentSize && array[ index ] == x;
+    }
+
+    /**
+     * Moves the element up after its key has increased.
+     * @param x is the element whose key has increased.
+     */
+    public void increaseKey( E x ) {
+        if ( contains( x ) )
+            percolateUp( x.getHeapIndex( ) );
+    }
+
+    /**
+     * Moves the element down after its key has decreased.
+     * @param x is the element whose key has decreased.
+     */
+    public void decreaseKey( E x ) {
+        if ( contains( x ) )
+            percolateDown( x.getHeapIndex( ) );
+    }
+
+    /**
+     * Removes the given element from the heap.
+     * @param x is the element to be removed.
+     * @return true if the element was in the heap.
+     */
+    public boolean remove( E x ) {
+        if ( !contains( x ) )
+            return false;
+        removeAt( x.getHeapIndex( ) );
+        return true;
+    }
+
+    /**
+     * Removes the element at the given slot by filling the slot with the last element,
+     * which is then moved up or down until the heap order property is satisfied.
+     * @param index is the slot to be emptied.
+     */
+    private void removeAt( int index ) {
+        array[ index ].setHeapIndex( 0 );
+        E last = array[ currentSize ];
+        array[ currentSize ] = null;
+        currentSize--;
+        if ( index <= currentSize ) {
+            place( last, index );
+            percolateUp( index );
+            percolateDown( last.getHeapIndex( ) );
+        }
+    }
+
+    /**
+     * Makes the heap satisfy the heap order property.
+     */
+    private void buildHeap( ) {
+        for( int i = currentSize / 2; i > 0; i-- )
+            percolateDown( i );
+    }
+    public boolean isEmpty( ) {
+        return currentSize == 0;
+    }
+
+    // Puts the element into the given slot and lets the element know its slot.
+    private void place( E x, int index ) {
+        array[ index ] = x;
+        x.setHeapIndex( index );
+    }
+
+    /**
+     * This method moves the element at the given slot up until it satisfies the heap order property.
+     * @param hole is the hole to be percolated up.
+     */
+    private void percolateUp( int hole ) {
+        E tmp = array[ hole ];
+        for ( ; hole > 1 && tmp.compareTo( array[ hole / 2 ] ) > 0; hole /= 2 )
+            place( array[ hole / 2 ], hole );
+        place( tmp, hole );
+    }
+
+    /**
+     * This method changes the location of the corresponding element until it satisfies the heap order property.
+     * @param hole is the hole to be percolated down.
+     */
+    private void percolateDown( int hole ) {
+        int child;
+        E tmp = array[ hole ];
+
+        for ( ; hole * 2 <= currentSize; hole = child ) {
+            child = hole * 2;
+            if ( child != currentSize &&
+                    array[ child + 1 ].compareTo( array[ child ] ) > 0 )
+                child++;
+            if ( array[ child ].compareTo( tmp ) > 0 )
+                place( array[ child ], hole );
+            else
+                break;
+        }
+        place( tmp, hole );
+    }
+    public int getSize() { return this.currentSize; }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new HeapIterator();
+    }
+
+    /**
+     * A heap iterator class is defined in order to traverse the elements of the heap.
+     */
+    private class HeapIterator implements Iterator<E> {
+        private int current = 1;
+
+        @Override
+        public boolean hasNext() {
+            return current <= currentSize;
+        }
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            E nextElement = array[current];
+            current++;
+            return nextElement;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hash map with non-negative integer keys, using open addressing with linear probing.
+ * Keys are stored in a primitive array next to a parallel array of values, so no boxing and no entry objects are needed.
+ * Each key slot stores the key plus one, so that the default value 0 of the array marks an empty slot.
+ * @param <V> the value of the entries.
+ */
+public class MyIntHashMap<V> implements Iterable<V> {
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private int[] keys; // The keys plus one, 0 for an empty slot. Allocated on the first put.
+    private V[] values; // The value of each entry, stored at the same slot as its key.
+    private int capacity; // The capacity of the hash table, always a power of two.
+    private int size; // Number of entries in the hash map.
+
+    public MyIntHashMap(int initialCapacity) {
+        this.capacity = 4;
+        while (capacity < initialCapacity && capacity < MAXIMUM_CAPACITY) {
+            capacity <<= 1;
+        }
+        this.size = 0;
+    }
+    public MyIntHashMap() {
+        this(8);
+    }
+
+    // The bits of the key are mixed, since consecutive keys would otherwise fill consecutive slots.
+    private int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (capacity - 1);
+    }
+
+    // Returns the slot of the given key, or -1 if the key is not in the hash map.
+    private int indexOf(int key) {
+        if (keys == null || key < 0) {
+            return -1;
+        }
+        int stored = key + 1;
+        int index = hash(key);
+        int current;
+        while ((current = keys[index]) != 0) {
+            if (current == stored) {
+                return index;
+            }
+            index = (index + 1) & (capacity - 1);
+        }
+        return -1;
+    }
+    public void put(int key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key.");
+        }
+        if (keys == null) {
+            keys = new int[capacity];
+            values = newArray(capacity);
+        }
+        int stored = key + 1;
+        int index = hash(key);
+        int current;
+        while ((current = keys[index]) != 0) {
+            if (current == stored) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & (capacity - 1);
+        }
+        keys[index] = stored;
+        values[index] = value;
+        size++;
+
+        // The hash map is rehashed when it is three quarters full.
+        if (size >= capacity - (capacity >>> 2) && capacity < MAXIMUM_CAPACITY) {
+            rehash();
+        }
+    }
+    public V get(int key) {
+        int index = indexOf(key);
+        return index < 0 ? null : values[index];
+    }
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Removes the entry with the given key. The following entries of the same cluster are shifted back into the hole,
+     * so that no marker has to be left behind.
+     * @param key is the key of the entry to be removed.
+     */
+    public void remove(int key) {
+        int hole = indexOf(key);
+        if (hole < 0) {
+            return;
+        }
+        size--;
+
+        int mask = capacity - 1;
+        int next = (hole + 1) & mask;
+        int current;
+        while ((current = keys[next]) != 0) {
+            int home = hash(current - 1);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = current;
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = 0;
+        values[hole] = null;
+    }
+    public int getSize() {
+        return this.size;
+    }
+
+    /**
+     * Makes room for the given number of entries at once, so that no rehash happens while they are put.
+     * @param expectedSize is the number of entries that the hash map is expected to hold.
+     */
+    public void ensureCapacity(int expectedSize) {
+        int needed = capacity;
+        while (needed - (needed >>> 2) <= expectedSize && needed < MAXIMUM_CAPACITY) {
+            needed <<= 1;
+        }
+        if (keys == null) {
+            // The arrays are not allocated yet, so they are simply allocated with the larger capacity on the first put.
+            capacity = needed;
+            return;
+        }
+        while (capacity < needed) {
+            rehash();
+        }
+    }
+    // The array only ever holds values of type V, so an array of objects can be used as an array of V.
+    @SuppressWarnings("unchecked")
+    private static <V> V[] newArray(int length) {
+        return (V[]) new Object[length];
+    }
+    private void rehash() {
+        int[] oldKeys = keys;
+        V[] oldValues = values;
+        capacity *= 2;
+        keys = new int[capacity];
+        values = newArray(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int index = hash(oldKeys[i] - 1);
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+    @Override
+    public Iterator<V> iterator() {
+        return new IntHashMapIterator();
+    }
+
+    /**
+     * An iterator is defined in order to traverse the values of the hash map.
+     */
+    private class IntHashMapIterator implements Iterator<V> {
+        private int currentIndex = -1; // The index of the next occupied slot.
+        public IntHashMapIterator() {
+            nextOccupiedSlot();
+        }
+
+        // Advances to the next slot which is not empty.
+        private void nextOccupiedSlot() {
+            currentIndex++;
+            while (keys != null && currentIndex < capacity && keys[currentIndex] == 0) {
+                currentIndex++;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return keys != null && currentIndex < capacity;
+        }
+
+        @Override
+        public V next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more elements.");
+            }
+            V value = values[currentIndex];
+            nextOccupiedSlot();
+            return value;
+        }
+    }
+}
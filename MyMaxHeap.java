@@ -40,6 +40,7 @@ public class MyMaxHeap<E extends Comparable<? super E>> implements Iterable<E> {
     }
 
     private void enlargeArray( int newSize ) {
+        Metrics.recordHeapResize( );
         E[] old = array;
         array = (E[]) new Comparable[ newSize ];
         for( int i = 0; i < old.length; i++ )
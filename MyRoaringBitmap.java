@@ -0,0 +1,336 @@
+import java.util.Arrays;
+
+/**
+ * Compressed bitmap of non-negative integers, in the style of a roaring bitmap.
+ * The integers are split into chunks of 65536 by their upper 16 bits, and each chunk is stored in a container:
+ * a sorted array of the lower 16 bits while the chunk is sparse, or a plain bitmap of 65536 bits once it gets dense.
+ * Dense ordinals like the post ordinals therefore cost about two bytes each in a sparse chunk, and at most one bit each in a dense one.
+ */
+public class MyRoaringBitmap {
+    private static final int ARRAY_LIMIT = 4096; // An array container with more values than this is turned into a bitmap container.
+    private static final int BITMAP_WORDS = 1 << 10; // Number of longs in a bitmap container.
+
+    private char[] keys; // The upper 16 bits of the chunks, in ascending order.
+    private Container[] containers; // The container of each chunk, at the same index as its key.
+    private int chunks; // Number of chunks which are in use.
+    private int size; // Number of integers in the bitmap.
+
+    public MyRoaringBitmap() {
+        this.keys = new char[1];
+        this.containers = new Container[1];
+        this.chunks = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Adds the integer to the bitmap.
+     * @param value is the integer to be added, it must not be negative.
+     * @return true if the integer was not in the bitmap before.
+     */
+    public boolean add(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value.");
+        }
+        int index = containerFor((char) (value >>> 16));
+        boolean added = containers[index].add((char) value);
+        if (added) {
+            size++;
+            // A full array container is replaced with a bitmap container.
+            if (containers[index].cardinality > ARRAY_LIMIT && containers[index] instanceof ArrayContainer) {
+                containers[index] = ((ArrayContainer) containers[index]).toBitmap();
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Adds many integers at once. The integers are sorted first, so that each chunk is found only once
+     * and the values of a sparse chunk are merged into its array in a single pass.
+     * @param values is the array of the integers to be added, it is sorted by this method.
+     * @param count is the number of integers to be taken from the beginning of the array.
+     */
+    public void addAll(int[] values, int count) {
+        Arrays.sort(values, 0, count);
+        int start = 0;
+        while (start < count) {
+            if (values[start] < 0) {
+                throw new IllegalArgumentException("Negative value.");
+            }
+            char key = (char) (values[start] >>> 16);
+            int end = start + 1;
+            while (end < count && (values[end] >>> 16) == key) {
+                end++;
+            }
+            int index = containerFor(key);
+            Container container = containers[index];
+            int before = container.cardinality;
+            if (container instanceof ArrayContainer && before + (end - start) > ARRAY_LIMIT) {
+                container = ((ArrayContainer) container).toBitmap();
+                containers[index] = container;
+            }
+            container.addSorted(values, start, end);
+            size += container.cardinality - before;
+            start = end;
+        }
+    }
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = indexOfKey((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Removes the integer from the bitmap. A bitmap container which gets sparse again is turned back into an array container,
+     * and a container which gets empty is dropped.
+     * @param value is the integer to be removed.
+     * @return true if the integer was in the bitmap.
+     */
+    public boolean remove(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = indexOfKey((char) (value >>> 16));
+        if (index < 0 || !containers[index].remove((char) value)) {
+            return false;
+        }
+        size--;
+        Container container = containers[index];
+        if (container.cardinality == 0) {
+            System.arraycopy(keys, index + 1, keys, index, chunks - index - 1);
+            System.arraycopy(containers, index + 1, containers, index, chunks - index - 1);
+            chunks--;
+            containers[chunks] = null;
+        }
+        else if (container.cardinality <= ARRAY_LIMIT / 2 && container instanceof BitmapContainer) {
+            containers[index] = ((BitmapContainer) container).toArray();
+        }
+        return true;
+    }
+    public int getSize() {
+        return this.size;
+    }
+
+    // Returns all the integers of the bitmap in ascending order.
+    public int[] toArray() {
+        int[] values = new int[size];
+        int count = 0;
+        for (int i = 0; i < chunks; i++) {
+            count = containers[i].copyTo(values, count, keys[i] << 16);
+        }
+        return values;
+    }
+
+    /**
+     * Estimates the number of bytes that the bitmap occupies in memory, assuming 12 byte object headers and compressed references.
+     * @return the estimated number of bytes.
+     */
+    public long estimateBytes() {
+        long bytes = 32 + arrayBytes(keys.length, 2) + arrayBytes(containers.length, 4);
+        for (int i = 0; i < chunks; i++) {
+            bytes += containers[i].estimateBytes();
+        }
+        return bytes;
+    }
+
+    // Returns the estimated size of an array with the given length and element size.
+    static long arrayBytes(int length, int elementBytes) {
+        return (16 + (long) length * elementBytes + 7) / 8 * 8;
+    }
+
+    // Returns the index of the chunk with the given key, or a negative number if there is no such chunk.
+    private int indexOfKey(char key) {
+        return Arrays.binarySearch(keys, 0, chunks, key);
+    }
+
+    // Returns the index of the chunk with the given key. If there is no such chunk, an empty one is inserted in its place.
+    private int containerFor(char key) {
+        int index = indexOfKey(key);
+        if (index >= 0) {
+            return index;
+        }
+        index = -index - 1;
+        if (chunks == keys.length) {
+            keys = Arrays.copyOf(keys, chunks * 2);
+            containers = Arrays.copyOf(containers, chunks * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, chunks - index);
+        System.arraycopy(containers, index, containers, index + 1, chunks - index);
+        keys[index] = key;
+        containers[index] = new ArrayContainer();
+        chunks++;
+        return index;
+    }
+
+    /**
+     * A container holds the lower 16 bits of the integers of a single chunk.
+     */
+    private abstract static class Container {
+        int cardinality; // Number of values in the container.
+        abstract boolean add(char value);
+        abstract boolean contains(char value);
+        abstract boolean remove(char value);
+
+        // Adds the lower 16 bits of the given sorted integers, which all belong to this container's chunk.
+        abstract void addSorted(int[] values, int from, int to);
+
+        // Copies the values in ascending order into the array with the given upper bits, and returns the index after the last one.
+        abstract int copyTo(int[] values, int index, int high);
+        abstract long estimateBytes();
+    }
+
+    /**
+     * Container of a sparse chunk, which keeps its values in a sorted array.
+     */
+    private static class ArrayContainer extends Container {
+        char[] values = new char[4];
+
+        @Override
+        boolean add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_LIMIT + 1));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return true;
+        }
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+        @Override
+        boolean remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+            cardinality--;
+            return true;
+        }
+
+        // The sorted values are merged with the existing ones from the back, so that no temporary array is needed.
+        @Override
+        void addSorted(int[] added, int from, int to) {
+            int needed = cardinality + (to - from);
+            if (needed > values.length) {
+                values = Arrays.copyOf(values, needed);
+            }
+            int write = needed;
+            int existing = cardinality - 1;
+            int incoming = to - 1;
+            while (incoming >= from) {
+                char value = (char) added[incoming];
+                if (existing >= 0 && values[existing] > value) {
+                    values[--write] = values[existing--];
+                }
+                else {
+                    if (existing < 0 || values[existing] != value) {
+                        // Duplicates within the added values are skipped as well.
+                        if (write == needed || values[write] != value) {
+                            values[--write] = value;
+                        }
+                    }
+                    incoming--;
+                }
+            }
+            // The merged values are shifted back to the beginning if some values were duplicates.
+            int merged = needed - write;
+            int kept = existing + 1;
+            System.arraycopy(values, write, values, kept, merged);
+            cardinality = kept + merged;
+        }
+        @Override
+        int copyTo(int[] added, int index, int high) {
+            for (int i = 0; i < cardinality; i++) {
+                added[index++] = high | values[i];
+            }
+            return index;
+        }
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+        @Override
+        long estimateBytes() {
+            return 16 + arrayBytes(values.length, 2);
+        }
+    }
+
+    /**
+     * Container of a dense chunk, which keeps one bit for each of the 65536 possible values.
+     */
+    private static class BitmapContainer extends Container {
+        final long[] words = new long[BITMAP_WORDS];
+
+        @Override
+        boolean add(char value) {
+            long bit = 1L << value;
+            int word = value >>> 6;
+            if ((words[word] & bit) != 0) {
+                return false;
+            }
+            words[word] |= bit;
+            cardinality++;
+            return true;
+        }
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+        @Override
+        boolean remove(char value) {
+            long bit = 1L << value;
+            int word = value >>> 6;
+            if ((words[word] & bit) == 0) {
+                return false;
+            }
+            words[word] &= ~bit;
+            cardinality--;
+            return true;
+        }
+        @Override
+        void addSorted(int[] added, int from, int to) {
+            for (int i = from; i < to; i++) {
+                add((char) added[i]);
+            }
+        }
+        @Override
+        int copyTo(int[] values, int index, int high) {
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    values[index++] = high | (word << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                }
+            }
+            return index;
+        }
+        ArrayContainer toArray() {
+            ArrayContainer array = new ArrayContainer();
+            array.values = new char[Math.max(cardinality, 4)];
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    array.values[array.cardinality++] = (char) ((word << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return array;
+        }
+        @Override
+        long estimateBytes() {
+            return 16 + arrayBytes(BITMAP_WORDS, 8);
+        }
+    }
+}
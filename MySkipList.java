@@ -0,0 +1,298 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Indexable skip list which keeps its elements sorted in descending order at all times.
+ * Every link also stores how many elements it skips, so the element at a given rank and the rank of a given element
+ * are found in logarithmic time, the same as insertion and removal. Iterating the elements in order needs no copying.
+ * The key of an element must not change while the element is in the list, unless the change is made between startUpdate and
+ * finishUpdate, which move the node of the element to its new place without allocating anything.
+ * The changes use scratch arrays of the list, so the list must not be changed by two threads at once. Reading needs no scratch.
+ * @param <E> the type of the elements.
+ */
+public class MySkipList<E extends Comparable<? super E>> implements Iterable<E> {
+    private static final int MAX_LEVEL = 32;
+
+    /**
+     * A node of the skip list, which has a link and the length of that link on each of its levels.
+     */
+    private static class Node<E> {
+        final E element;
+        final Node<E>[] next;
+        final int[] span; // Number of elements that the link at each level moves forward.
+        Node(E element, int levels) {
+            this.element = element;
+            this.next = newNodes(levels);
+            this.span = new int[levels];
+        }
+    }
+
+    // A generic array cannot be created, so an array of nodes of any element is used as an array of nodes of E.
+    @SuppressWarnings("unchecked")
+    private static <E> Node<E>[] newNodes(int length) {
+        return (Node<E>[]) new Node<?>[length];
+    }
+
+    private final Node<E> head; // The head node, which holds no element and has all the levels.
+    private int level; // Number of levels in use.
+    private int size; // Number of elements in the list.
+    private int seed; // State of the random number generator which decides the levels of the new nodes.
+    private final Node<E>[] update = newNodes(MAX_LEVEL); // The last node before a searched element on each level, reused by every change.
+    private final int[] rank = new int[MAX_LEVEL]; // The rank of the node in update on each level, counting the head as rank 0.
+    private Node<E> updating; // The node whose key is being changed between startUpdate and finishUpdate, null otherwise.
+
+    public MySkipList() {
+        head = new Node<>(null, MAX_LEVEL);
+        level = 1;
+        size = 0;
+        seed = 0x2545F491;
+    }
+
+    /**
+     * Builds the list at once from elements which are already sorted, in linear time.
+     * Every node is linked after the last node of each of its levels, so no search is needed.
+     * @param sorted is the array of the elements in descending order.
+     */
+    public MySkipList(E[] sorted) {
+        this();
+        Node<E>[] last = newNodes(MAX_LEVEL); // The last node on each level so far.
+        int[] lastRank = new int[MAX_LEVEL]; // The rank of that node, counting the head as rank 0.
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            last[i] = head;
+        }
+        for (E x: sorted) {
+            int rank = ++size;
+            int levels = randomLevel();
+            level = Math.max(level, levels);
+            Node<E> node = new Node<>(x, levels);
+            for (int i = 0; i < levels; i++) {
+                last[i].next[i] = node;
+                last[i].span[i] = rank - lastRank[i];
+                last[i] = node;
+                lastRank[i] = rank;
+            }
+        }
+        // The last link of every level goes past the end of the list.
+        for (int i = 0; i < level; i++) {
+            last[i].span[i] = size - lastRank[i];
+        }
+    }
+
+    // The element which is greater comes first, so a node is passed while its element is greater than the given one.
+    private boolean comesBefore(Node<E> node, E x) {
+        return node != null && node.element.compareTo(x) > 0;
+    }
+
+    /**
+     * Picks the number of levels of a new node. Each level is kept with a probability of one half.
+     * @return the number of levels.
+     */
+    private int randomLevel() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        int levels = Integer.numberOfTrailingZeros(seed | (1 << (MAX_LEVEL - 1))) + 1;
+        return Math.min(levels, MAX_LEVEL);
+    }
+
+    public void insert(E x) {
+        link(new Node<>(x, randomLevel()));
+    }
+
+    /**
+     * Removes the given element from the list.
+     * @param x is the element to be removed, with the same key as when it was inserted.
+     * @return true if the element was in the list.
+     */
+    public boolean remove(E x) {
+        Node<E> node = findNode(x);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    /**
+     * Starts a change of the key of the given element, which must be made before finishUpdate is called.
+     * The node of the element and the nodes before it are found while the element still has its old key.
+     * @param x is the element whose key is going to change.
+     * @return true if the element is in the list.
+     */
+    public boolean startUpdate(E x) {
+        updating = findNode(x);
+        return updating != null;
+    }
+
+    /**
+     * Moves the element of startUpdate to its place under its new key. If it still comes between the same neighbours, which is
+     * common since a key usually changes a little, the node stays where it is. Otherwise the same node is unlinked and linked again.
+     */
+    public void finishUpdate() {
+        Node<E> node = updating;
+        updating = null;
+        if (node == null) {
+            return;
+        }
+        Node<E> previous = update[0];
+        Node<E> next = node.next[0];
+        if ((previous == head || previous.element.compareTo(node.element) > 0)
+                && (next == null || node.element.compareTo(next.element) > 0)) {
+            return;
+        }
+        unlink(node);
+        link(node);
+    }
+
+    /**
+     * Finds the node of the given element, and keeps the last node before it on every level in update.
+     * @param x is the element to be searched for.
+     * @return the node, or null if the element is not in the list.
+     */
+    private Node<E> findNode(E x) {
+        Node<E> node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (comesBefore(node.next[i], x)) {
+                node = node.next[i];
+            }
+            update[i] = node;
+        }
+        node = node.next[0];
+        if (node == null || node.element.compareTo(x) != 0) {
+            return null;
+        }
+        return node;
+    }
+
+    // Links the node in at the place of its element, on as many levels as it has.
+    private void link(Node<E> newNode) {
+        E x = newNode.element;
+        int levels = newNode.next.length;
+
+        // The last node before the new element is found on every level.
+        Node<E> node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (comesBefore(node.next[i], x)) {
+                rank[i] += node.span[i];
+                node = node.next[i];
+            }
+            update[i] = node;
+        }
+        if (levels > level) {
+            for (int i = level; i < levels; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = size;
+            }
+            level = levels;
+        }
+
+        // The new node is linked in on its levels, and the links passing over it get one longer.
+        for (int i = 0; i < levels; i++) {
+            newNode.next[i] = update[i].next[i];
+            update[i].next[i] = newNode;
+            newNode.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = rank[0] - rank[i] + 1;
+        }
+        for (int i = levels; i < level; i++) {
+            update[i].span[i]++;
+        }
+        size++;
+    }
+
+    // Unlinks the node, whose previous nodes are in update, and the links passing over it get one shorter.
+    private void unlink(Node<E> node) {
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == node) {
+                update[i].span[i] += node.span[i] - 1;
+                update[i].next[i] = node.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        size--;
+    }
+
+    /**
+     * Returns the element with the given rank, the greatest element having rank 0.
+     * @param rank is the rank of the element.
+     * @return the element, or null if there is no element with that rank.
+     */
+    public E get(int rank) {
+        if (rank < 0 || rank >= size) {
+            return null;
+        }
+        int target = rank + 1; // Number of elements to move forward from the head.
+        int traversed = 0;
+        Node<E> node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && traversed + node.span[i] <= target) {
+                traversed += node.span[i];
+                node = node.next[i];
+            }
+            if (traversed == target) {
+                return node.element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the rank of the given element, the greatest element having rank 0.
+     * @param x is the element to be searched for.
+     * @return the rank, or -1 if the element is not in the list.
+     */
+    public int rankOf(E x) {
+        int traversed = 0;
+        Node<E> node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (comesBefore(node.next[i], x)) {
+                traversed += node.span[i];
+                node = node.next[i];
+            }
+        }
+        node = node.next[0];
+        if (node == null || node.element.compareTo(x) != 0) {
+            return -1;
+        }
+        return traversed;
+    }
+    public E findMax() {
+        return head.next[0] == null ? null : head.next[0].element;
+    }
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    public int getSize() { return this.size; }
+
+    // The elements are visited from the greatest to the smallest.
+    @Override
+    public Iterator<E> iterator() {
+        return new SkipListIterator();
+    }
+
+    /**
+     * An iterator which follows the links of the lowest level.
+     */
+    private class SkipListIterator implements Iterator<E> {
+        private Node<E> current = head.next[0];
+
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            E nextElement = current.element;
+            current = current.next[0];
+            return nextElement;
+        }
+    }
+}
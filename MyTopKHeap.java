@@ -0,0 +1,103 @@
+/**
+ * A bounded min heap which keeps only the k greatest elements that are offered to it.
+ * The smallest of the kept elements is at the root, so a new element only has to beat the root in order to get in.
+ * The backing array grows on demand up to k, so that a large k does not allocate memory for elements that never arrive.
+ * @param <E> the type of the elements.
+ */
+public class MyTopKHeap<E extends Comparable<? super E>> {
+    private static final int DEFAULT_CAPACITY = 15;
+    private final int k; // Maximum number of elements to be kept.
+    private int currentSize; // Number of elements in the heap.
+    private E[] array; // The heap array where all the elements are stored, starting from index 1.
+
+    public MyTopKHeap( int k ) {
+        this.k = Math.max( k, 0 );
+        currentSize = 0;
+        array = newArray( Math.min( this.k, DEFAULT_CAPACITY ) + 1 );
+    }
+
+    /**
+     * Offers an element to the heap. If the heap is full, the element replaces the smallest kept element only if it is greater.
+     * @param x is the element to be offered.
+     */
+    public void offer( E x ) {
+        if ( currentSize < k ) {
+            if ( currentSize == array.length - 1 )
+                enlargeArray( Math.min( k, array.length * 2 ) + 1 );
+
+            // Percolate up algorithm, with the smaller elements moving up.
+            int hole = ++currentSize;
+            for ( ; hole > 1 && x.compareTo( array[ hole / 2 ] ) < 0; hole /= 2 )
+                array[ hole ] = array[ hole / 2 ];
+            array[ hole ] = x;
+        }
+        // The smallest element is replaced when the offered element is greater than it.
+        else if ( k > 0 && x.compareTo( array[ 1 ] ) > 0 ) {
+            array[ 1 ] = x;
+            percolateDown( 1 );
+        }
+    }
+
+    // The array only ever holds elements of type E, so an array of comparables can be used as an array of E.
+    @SuppressWarnings( "unchecked" )
+    private static <E> E[] newArray( int length ) {
+        return ( E[] ) new Comparable<?>[ length ];
+    }
+    private void enlargeArray( int newSize ) {
+        Metrics.recordHeapResize( );
+        E[] old = array;
+        array = newArray( newSize );
+        for( int i = 0; i <= currentSize; i++ )
+            array[ i ] = old[ i ];
+    }
+
+    public E findMin( ) {
+        if( isEmpty( ) )
+            return null;
+        return array[ 1 ];
+    }
+
+    // Returns true if k elements are kept, so that a new element has to be greater than the minimum to get in.
+    public boolean isFull( ) {
+        return currentSize == k;
+    }
+
+    public E deleteMin( ) {
+        if( isEmpty( ) )
+            return null;
+
+        E minItem = array[ 1 ];
+        array[ 1 ] = array[ currentSize ];
+        array[ currentSize ] = null;
+        currentSize--;
+        if ( currentSize > 0 )
+            percolateDown( 1 );
+
+        return minItem;
+    }
+
+    /**
+     * This method changes the location of the corresponding element until it satisfies the heap order property.
+     * @param hole is the hole to be percolated down.
+     */
+    private void percolateDown( int hole ) {
+        int child;
+        E tmp = array[ hole ];
+
+        for ( ; hole * 2 <= currentSize; hole = child ) {
+            child = hole * 2;
+            if ( child != currentSize &&
+                    array[ child + 1 ].compareTo( array[ child ] ) < 0 )
+                child++;
+            if ( array[ child ].compareTo( tmp ) < 0 )
+                array[ hole ] = array[ child ];
+            else
+                break;
+        }
+        array[ hole ] = tmp;
+    }
+    public boolean isEmpty( ) {
+        return currentSize == 0;
+    }
+    public int getSize() { return this.currentSize; }
+}
@@ -0,0 +1,204 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes the output lines into a reusable byte buffer, which is written to the output file through a file channel when it gets full.
+ * Text fragments, IDs and integers are appended one by one, so no String has to be built for a line and no charset encoder is involved.
+ * ASCII characters are copied as single bytes, and any other text is encoded as UTF-8.
+ * Instead of a file channel, the full buffers can be handed to a target, which can write them on another thread.
+ * A sink without a target keeps all the bytes in memory, growing its buffer as needed, until they are copied into another sink.
+ */
+public class OutputSink implements Closeable {
+    /**
+     * Receives the full buffers of a sink.
+     */
+    public interface Target extends Closeable {
+        /**
+         * Takes over the bytes of the buffer.
+         * @param buffer is the buffer, which belongs to the target after this call.
+         * @param length is the number of bytes in the buffer.
+         * @return the buffer that the sink continues with, which can be the same buffer once its bytes are written.
+         * @throws IOException if the bytes cannot be written.
+         */
+        byte[] write(byte[] buffer, int length) throws IOException;
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final Target target;
+    private byte[] buffer;
+    private int count; // Number of bytes in the buffer.
+    private final byte[] digits = new byte[11]; // Space for the digits of an integer, which are produced from the last one.
+
+    public OutputSink(String fileName) throws IOException {
+        this(new ChannelTarget(fileName));
+    }
+    public OutputSink(FileChannel channel) {
+        this(new ChannelTarget(channel));
+    }
+    public OutputSink(Target target) {
+        this(target, new byte[BUFFER_SIZE]);
+    }
+    public OutputSink() {
+        this(null, new byte[128]);
+    }
+    public OutputSink(Target target, byte[] buffer) {
+        this.target = target;
+        this.buffer = buffer;
+        this.count = 0;
+    }
+
+    /**
+     * Target which writes the buffers to a file channel right away and gives them back.
+     */
+    static class ChannelTarget implements Target {
+        private final FileChannel channel;
+        ChannelTarget(FileChannel channel) {
+            this.channel = channel;
+        }
+        // Creates the file, or empties it if it exists.
+        ChannelTarget(String fileName) throws IOException {
+            this(FileChannel.open(Path.of(fileName), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING));
+        }
+        @Override
+        public byte[] write(byte[] buffer, int length) throws IOException {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            return buffer;
+        }
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    // Makes room for the given number of bytes by writing the buffer out, or by growing it if the sink has no target.
+    private void ensureSpace(int length) throws IOException {
+        if (count + length > buffer.length) {
+            if (target == null) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + length));
+            } else {
+                flushBuffer();
+            }
+        }
+    }
+    public OutputSink append(byte[] bytes) throws IOException {
+        return append(bytes, 0, bytes.length);
+    }
+    public OutputSink append(byte[] bytes, int offset, int length) throws IOException {
+        if (target == null) {
+            ensureSpace(length);
+        }
+        // Bytes which do not fit into an empty buffer are appended in pieces.
+        while (length > buffer.length - count) {
+            int piece = buffer.length - count;
+            System.arraycopy(bytes, offset, buffer, count, piece);
+            count += piece;
+            offset += piece;
+            length -= piece;
+            flushBuffer();
+        }
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+        return this;
+    }
+    private OutputSink appendSmall(byte[] bytes) throws IOException {
+        ensureSpace(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+        return this;
+    }
+
+    /**
+     * Appends the characters of the given text, which can be a String or a slice of the input.
+     * @param text is the text to be appended.
+     * @return this sink, so that the parts of a line can be chained.
+     * @throws IOException if the buffer cannot be written out.
+     */
+    public OutputSink append(CharSequence text) throws IOException {
+        int length = text.length();
+        if (length > buffer.length) {
+            return append(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        ensureSpace(length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                // Text with a non-ASCII character is encoded as a whole, after removing the part which is already copied.
+                count -= i;
+                return append(text.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            buffer[count++] = (byte) c;
+        }
+        return this;
+    }
+
+    // Appends the decimal digits of the integer, without creating a String for it.
+    public OutputSink append(int value) throws IOException {
+        if (value == Integer.MIN_VALUE) {
+            return append("-2147483648");
+        }
+        ensureSpace(digits.length);
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        System.arraycopy(digits, position, buffer, count, digits.length - position);
+        count += digits.length - position;
+        return this;
+    }
+
+    // Ends the current line with the line separator of the system, like BufferedWriter.newLine.
+    public void newLine() throws IOException {
+        appendSmall(LINE_SEPARATOR);
+    }
+
+    // Returns the number of bytes which are waiting in the buffer.
+    public int size() {
+        return count;
+    }
+
+    // Drops the bytes which are waiting in the buffer.
+    public void reset() {
+        count = 0;
+    }
+
+    // Appends the bytes of this sink to the other sink, and empties this sink.
+    public void moveTo(OutputSink other) throws IOException {
+        other.append(buffer, 0, count);
+        count = 0;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0 && target != null) {
+            buffer = target.write(buffer, count);
+            count = 0;
+        }
+    }
+
+    // Hands the buffered bytes to the target.
+    public void flush() throws IOException {
+        flushBuffer();
+    }
+    @Override
+    public void close() throws IOException {
+        flushBuffer();
+        if (target != null) {
+            target.close();
+        }
+    }
+}
@@ -0,0 +1,334 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Replays an input file on all the cores, with the same output and the same final state as FeedManager.scanFile.
+ * The commands are read in windows. The first phase of every command in the window is run one by one in input order,
+ * which looks up the users and posts and registers the new ones. Then the users that each command reads and writes are known,
+ * and every command gets a level which is one more than the level of the last command it conflicts with.
+ * The commands of a level conflict with none of each other, so they are applied at the same time on a fork join pool,
+ * each into an output buffer of its own. The buffers are written to the output file in input order once the window is done.
+ * The users are the only shared state the second phases change: the likes of a post belong to its author, and the hash maps
+ * are only changed by the first phase. This holds only in the pull mode without cursors, since an inbox is changed by the
+ * posts and likes of all the followed users. The global ranking of the posts is also changed by the posts and likes of all the authors:
+ * these changes commute, so they only conflict with the trending_posts commands which read the whole ranking.
+ */
+public class ParallelReplay {
+    private static final int WINDOW = 4096; // Number of commands which are scheduled together.
+    private static final int BATCH = 8; // Number of commands of a level which a single task applies without splitting.
+
+    private final FeedManager manager;
+    private final ForkJoinPool pool;
+    private final CommandLine[] lines = new CommandLine[WINDOW];
+    private final FeedManager.Command[] commands = new FeedManager.Command[WINDOW];
+    private final OutputSink[] outputs = new OutputSink[WINDOW];
+    private final boolean[] resolved = new boolean[WINDOW]; // False for an empty or unknown line, which is skipped.
+    private final int[] levels = new int[WINDOW];
+    private final int[] order = new int[WINDOW]; // The commands of the window sorted by their levels.
+    private int[] levelStarts = new int[16]; // Index of the first command of each level in the order.
+
+    // The last level that wrote and read each user in the current window, indexed by the user ordinals.
+    // A level is only valid if the window number of the user is the current window, so nothing has to be cleared between windows.
+    private int[] lastWrite = new int[16];
+    private int[] lastRead = new int[16];
+    private int[] windowOf = new int[16];
+    private int window;
+
+    // The users followed by each user in the current window, which are not in the followings yet when the window is scheduled.
+    private MyIntHashMap<PendingFollow> pendingFollows;
+    // The last levels in the current window that changed and read the global ranking of the posts, which is scheduled like a user
+    // that the posts and likes only read, since their changes commute, and that a trending_posts command writes, since it reads all of them.
+    private int lastRankingChange;
+    private int lastRankingRead;
+    private int rankingAccess; // 0 if the command does not use the global ranking, 1 if it changes it, 2 if it reads it.
+    private int[] resources = new int[16]; // The users of a single command: the ordinal of a written user, or its complement if it is only read.
+    private int resourceCount;
+
+    /**
+     * A user followed in the current window, linked to the other users followed by the same user.
+     */
+    private static class PendingFollow {
+        final User user;
+        final PendingFollow next;
+        PendingFollow(User user, PendingFollow next) {
+            this.user = user;
+            this.next = next;
+        }
+    }
+
+    private ParallelReplay(FeedManager manager, ForkJoinPool pool) {
+        this.manager = manager;
+        this.pool = pool;
+        for (int i = 0; i < WINDOW; i++) {
+            lines[i] = new CommandLine();
+            commands[i] = new FeedManager.Command();
+            outputs[i] = new OutputSink();
+        }
+    }
+
+    /**
+     * Replays the commands of the input file and writes their output into the output file.
+     * @param manager is the engine which executes the commands, it must be in the pull mode without cursors.
+     * @param inputFileName is the name of the file to scan data from.
+     * @param outputFileName is the name of the file to write data to.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public static void run(FeedManager manager, String inputFileName, String outputFileName) throws IOException {
+        if (!manager.isPullOnly()) {
+            throw new IllegalStateException("The parallel replay works only in the pull mode without cursors.");
+        }
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            new ParallelReplay(manager, pool).replay(inputFileName, outputFileName);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void replay(String inputFileName, String outputFileName) throws IOException {
+        MappedCommandReader reader = new MappedCommandReader(inputFileName);
+        OutputSink out = new OutputSink(outputFileName);
+        int count;
+        do {
+            // A window of lines is read, and its commands are resolved in input order.
+            count = 0;
+            while (count < WINDOW && reader.nextLine(lines[count])) {
+                count++;
+            }
+            window++;
+            pendingFollows = new MyIntHashMap<>();
+            lastRankingChange = 0;
+            lastRankingRead = 0;
+            int maxLevel = 0;
+            for (int i = 0; i < count; i++) {
+                resolved[i] = manager.resolve(lines[i], commands[i]);
+                levels[i] = resolved[i] ? schedule(commands[i]) : 0;
+                maxLevel = Math.max(maxLevel, levels[i]);
+            }
+
+            applyLevels(count, maxLevel);
+
+            // The outputs are written in input order.
+            for (int i = 0; i < count; i++) {
+                if (resolved[i]) {
+                    outputs[i].moveTo(out);
+                }
+            }
+        } while (count == WINDOW);
+        reader.close();
+        out.close();
+    }
+
+    /**
+     * Finds the level of the command from the levels of the users that it reads and writes, and records the command on these users.
+     * A written user conflicts with every earlier command on that user, a read user only with the earlier writes.
+     * @param command is a resolved command.
+     * @return the level of the command, starting from 1.
+     */
+    private int schedule(FeedManager.Command command) {
+        resourceCount = 0;
+        rankingAccess = 0;
+        if (command.valid) {
+            addResources(command);
+        }
+        ensureUserCapacity(manager.getUsers().getSize());
+
+        int level = 1;
+        for (int i = 0; i < resourceCount; i++) {
+            int resource = resources[i];
+            int ordinal = resource >= 0 ? resource : ~resource;
+            if (windowOf[ordinal] != window) {
+                continue;
+            }
+            if (resource >= 0) {
+                level = Math.max(level, Math.max(lastWrite[ordinal], lastRead[ordinal]) + 1);
+            } else {
+                level = Math.max(level, lastWrite[ordinal] + 1);
+            }
+        }
+        if (rankingAccess == 1) {
+            level = Math.max(level, lastRankingRead + 1);
+            lastRankingChange = Math.max(lastRankingChange, level);
+        }
+        else if (rankingAccess == 2) {
+            level = Math.max(level, Math.max(lastRankingChange, lastRankingRead) + 1);
+            lastRankingRead = level;
+        }
+        for (int i = 0; i < resourceCount; i++) {
+            int resource = resources[i];
+            int ordinal = resource >= 0 ? resource : ~resource;
+            if (windowOf[ordinal] != window) {
+                windowOf[ordinal] = window;
+                lastWrite[ordinal] = 0;
+                lastRead[ordinal] = 0;
+            }
+            if (resource >= 0) {
+                lastWrite[ordinal] = level;
+            } else {
+                lastRead[ordinal] = Math.max(lastRead[ordinal], level);
+            }
+        }
+        return level;
+    }
+
+    // Lists the users that the second phase of a valid command reads and writes.
+    private void addResources(FeedManager.Command command) {
+        User user = command.user;
+        switch (command.type) {
+            case CREATE_USER: {
+                // The new user is not known to any other command yet.
+                break;
+            }
+            case FOLLOW_USER: {
+                pendingFollows.put(user.getOrdinal(), new PendingFollow(command.otherUser, pendingFollows.get(user.getOrdinal())));
+                addResource(user, true);
+                addResource(command.otherUser, true);
+                break;
+            }
+            case UNFOLLOW_USER: {
+                addResource(user, true);
+                addResource(command.otherUser, true);
+                break;
+            }
+            case CREATE_POST: {
+                addResource(user, true);
+                rankingAccess = 1;
+                break;
+            }
+            case SEE_POST: {
+                addResource(user, true);
+                break;
+            }
+            case TOGGLE_LIKE: {
+                rankingAccess = 1;
+                addResource(user, true);
+                addResource(command.post.getAuthor(), true);
+                break;
+            }
+            case SEE_ALL_POSTS_FROM_USER: {
+                addResource(user, true);
+                addResource(command.otherUser, false);
+                break;
+            }
+            case GENERATE_FEED:
+            case SCROLL_THROUGH_FEED: {
+                // A feed reads the posts of all the followed users, and a scroll can like any of them.
+                boolean write = command.type == CommandType.SCROLL_THROUGH_FEED;
+                if (write) {
+                    rankingAccess = 1;
+                }
+                addResource(user, write);
+                for (User followedUser: user.getFollowings()) {
+                    addResource(followedUser, write);
+                }
+                for (PendingFollow follow = pendingFollows.get(user.getOrdinal()); follow != null; follow = follow.next) {
+                    addResource(follow.user, write);
+                }
+                break;
+            }
+            case SORT_POSTS: {
+                addResource(user, false);
+                break;
+            }
+            case TRENDING_POSTS: {
+                if (user != null) {
+                    addResource(user, false);
+                } else {
+                    rankingAccess = 2;
+                }
+                break;
+            }
+        }
+    }
+    private void addResource(User user, boolean write) {
+        if (resourceCount == resources.length) {
+            resources = Arrays.copyOf(resources, resourceCount * 2);
+        }
+        resources[resourceCount++] = write ? user.getOrdinal() : ~user.getOrdinal();
+    }
+    private void ensureUserCapacity(int users) {
+        if (users > windowOf.length) {
+            int capacity = Math.max(users, windowOf.length * 2);
+            lastWrite = Arrays.copyOf(lastWrite, capacity);
+            lastRead = Arrays.copyOf(lastRead, capacity);
+            windowOf = Arrays.copyOf(windowOf, capacity);
+        }
+    }
+
+    /**
+     * Applies the commands of the window level by level. The commands are sorted by their levels with a counting sort,
+     * keeping the input order within a level, and the commands of a level are split among the threads of the pool.
+     * @param count is the number of commands in the window.
+     * @param maxLevel is the highest level in the window.
+     */
+    private void applyLevels(int count, int maxLevel) {
+        if (levelStarts.length < maxLevel + 2) {
+            levelStarts = new int[Math.max(maxLevel + 2, levelStarts.length * 2)];
+        }
+        Arrays.fill(levelStarts, 0, maxLevel + 2, 0);
+        for (int i = 0; i < count; i++) {
+            if (resolved[i]) {
+                levelStarts[levels[i] + 1]++;
+            }
+        }
+        for (int level = 1; level <= maxLevel; level++) {
+            levelStarts[level + 1] += levelStarts[level];
+        }
+        int[] next = Arrays.copyOf(levelStarts, maxLevel + 1);
+        for (int i = 0; i < count; i++) {
+            if (resolved[i]) {
+                order[next[levels[i]]++] = i;
+            }
+        }
+
+        for (int level = 1; level <= maxLevel; level++) {
+            int from = levelStarts[level];
+            int to = levelStarts[level + 1];
+            // A level with a few commands is applied on the calling thread.
+            if (to - from <= BATCH) {
+                applyRange(from, to);
+            } else {
+                pool.invoke(new LevelTask(from, to));
+            }
+        }
+    }
+
+    // Applies the commands at the given range of the order.
+    private void applyRange(int from, int to) {
+        for (int i = from; i < to; i++) {
+            int index = order[i];
+            try {
+                manager.apply(commands[index], outputs[index]);
+            } catch (IOException e) {
+                // The outputs are kept in memory, so this does not happen.
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * A task which applies a range of the commands of a level, splitting it in halves until it is small enough.
+     */
+    private class LevelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        LevelTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH) {
+                applyRange(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LevelTask(from, middle), new LevelTask(middle, to));
+            }
+        }
+    }
+}
@@ -1,15 +1,26 @@
-public class Post implements Comparable<Post>{
+public class Post implements Comparable<Post>, HeapIndexed {
     private String id; // Post ID, it is used while hashing and for comparisons between posts.
+    private int ordinal; // Dense number given to the post at its creation, it is used by the sets of seen and liked posts.
     private User author; // The user who created this post.
     private String content;
     private int likes;
-    public Post(String id, User author, String content) {
+    private int heapIndex; // Slot of the post in its author's post heap.
+    public Post(String id, int ordinal, User author, String content) {
         this.id = id;
+        this.ordinal = ordinal;
         this.author = author;
         this.content = content;
         this.likes = 0;
     }
+
+    // Creates a post which is restored from a snapshot with its likes.
+    public Post(String id, int ordinal, User author, String content, int likes) {
+        this(id, ordinal, author, content);
+        this.likes = likes;
+    }
+    public String getContent() { return this.content; }
     public String getId() { return this.id; }
+    public int getOrdinal() { return this.ordinal; }
     public User getAuthor() { return this.author; }
     public int getLikes() { return this.likes; }
     public void incrementLike() { this.likes++; }
@@ -17,6 +28,10 @@ public class Post implements Comparable<Post>{
         if (this.likes > 0)
             this.likes--;
     }
+    @Override
+    public int getHeapIndex() { return this.heapIndex; }
+    @Override
+    public void setHeapIndex(int index) { this.heapIndex = index; }
 
     /**
      * The post with the greater number of likes is bigger than the other.
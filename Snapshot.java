@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes the whole state of a FeedManager into a binary file, and restores it much faster than replaying the commands.
+ * The users and posts are written in the order of their ordinals, so a reference to a user or a post is its ordinal alone,
+ * and the IDs and contents are written once each, prefixed with their lengths. The followings and the seen and liked posts are
+ * written as sorted ordinals, each stored as its difference from the previous one in a variable number of bytes.
+ * On restore, the heap of every author is built at once from its posts in linear time, and the inboxes of the push mode are
+ * filled after the whole graph is restored.
+ * The snapshot also records the position of the write-ahead log at which it was taken, so a recovery replays only the commands after it.
+ * It is written into a temporary file which replaces the old snapshot at once, so a crash never leaves a half written snapshot.
+ *
+ * The layout of the file is:
+ *   magic, version                                     two 4 byte integers
+ *   log position                                       an 8 byte integer
+ *   user count, then the ID of every user
+ *   post count, then for every post: ID, author ordinal, content, likes
+ *   for every user: followings, seen posts, liked posts, each as a count followed by the differences of the sorted ordinals
+ * Every other integer is a variable length integer, and every text is its length followed by its UTF-8 bytes.
+ */
+public class Snapshot {
+    private static final int MAGIC = 0x46454544; // "FEED"
+    private static final int VERSION = 2; // The first version has no log position.
+
+    /**
+     * Writes the users and posts of the manager into the file, for a manager which does not write a log.
+     * @param manager is the manager whose state is written.
+     * @param fileName is the name of the snapshot file.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(FeedManager manager, String fileName) throws IOException {
+        write(manager, fileName, 0);
+    }
+
+    /**
+     * Writes the users and posts of the manager into the file.
+     * @param manager is the manager whose state is written.
+     * @param fileName is the name of the snapshot file.
+     * @param logPosition is the position of the log after the last command which is included in the state.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(FeedManager manager, String fileName, long logPosition) throws IOException {
+        User[] users = new User[manager.getUsers().getSize()];
+        for (User user: manager.getUsers()) {
+            users[user.getOrdinal()] = user;
+        }
+        Post[] posts = new Post[manager.getPosts().getSize()];
+        for (Post post: manager.getPosts()) {
+            posts[post.getOrdinal()] = post;
+        }
+
+        Path path = Path.of(fileName);
+        Path temporaryPath = Path.of(fileName + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter writer = new ChannelWriter(channel);
+            writer.putInt(MAGIC);
+            writer.putInt(VERSION);
+            writer.putLong(logPosition);
+            writer.putVarint(users.length);
+            for (User user: users) {
+                writer.putText(user.getId());
+            }
+            writer.putVarint(posts.length);
+            for (Post post: posts) {
+                writer.putText(post.getId());
+                writer.putVarint(post.getAuthor().getOrdinal());
+                writer.putText(post.getContent());
+                writer.putVarint(post.getLikes());
+            }
+            for (User user: users) {
+                int[] followings = new int[user.getFollowings().getSize()];
+                int count = 0;
+                for (User followedUser: user.getFollowings()) {
+                    followings[count++] = followedUser.getOrdinal();
+                }
+                Arrays.sort(followings);
+                writer.putSortedInts(followings);
+                writer.putSortedInts(user.getSeenPosts().toArray());
+                writer.putSortedInts(user.getLikedPosts().toArray());
+            }
+            writer.flush();
+            channel.force(true);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restores the users and posts of the file into the manager, which must be empty.
+     * The users get the inboxes of the push mode if the manager is in that mode.
+     * @param manager is the empty manager which receives the state.
+     * @param fileName is the name of the snapshot file.
+     * @return the position of the log at which the snapshot was taken, 0 for a snapshot of the first version.
+     * @throws IOException if the file cannot be read or is not a snapshot.
+     */
+    public static long read(FeedManager manager, String fileName) throws IOException {
+        if (manager.getUsers().getSize() != 0 || manager.getPosts().getSize() != 0) {
+            throw new IllegalStateException("A snapshot can only be restored into an empty manager.");
+        }
+        long logPosition;
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            ChannelReader reader = new ChannelReader(channel);
+            if (reader.getInt() != MAGIC) {
+                throw new IOException(fileName + " is not a snapshot.");
+            }
+            int version = reader.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException(fileName + " is a snapshot of an unknown version.");
+            }
+            logPosition = version >= 2 ? reader.getLong() : 0;
+
+            // The users and posts are registered in the order of their ordinals, so the next ordinals continue after them.
+            User[] users = new User[reader.getVarint()];
+            manager.getUsers().ensureCapacity(users.length);
+            for (int i = 0; i < users.length; i++) {
+                users[i] = new User(reader.getText(), i, manager);
+                manager.getUsers().put(users[i].getId(), users[i]);
+            }
+            Post[] posts = new Post[reader.getVarint()];
+            manager.getPosts().ensureCapacity(posts.length);
+            int[] postCounts = new int[users.length];
+            for (int i = 0; i < posts.length; i++) {
+                String id = reader.getText();
+                User author = users[reader.getVarint()];
+                String content = reader.getText();
+                posts[i] = new Post(id, i, author, content, reader.getVarint());
+                manager.getPosts().put(id, posts[i]);
+                postCounts[author.getOrdinal()]++;
+            }
+
+            // The posts of every author are gathered into an array of their own, from which the heap is built.
+            Post[][] postsByAuthor = new Post[users.length][];
+            for (int i = 0; i < users.length; i++) {
+                postsByAuthor[i] = new Post[postCounts[i]];
+                postCounts[i] = 0;
+            }
+            for (Post post: posts) {
+                int author = post.getAuthor().getOrdinal();
+                postsByAuthor[author][postCounts[author]++] = post;
+            }
+            for (int i = 0; i < users.length; i++) {
+                users[i].restorePosts(postsByAuthor[i]);
+            }
+
+            for (User user: users) {
+                for (int followed: reader.getSortedInts()) {
+                    user.restoreFollow(users[followed]);
+                }
+                user.restorePostSets(reader.getSortedInts(), reader.getSortedInts());
+            }
+        }
+
+        manager.resetTrendingPosts();
+
+        // The authors with many followers are found once all the follows are known, and then the inboxes are filled.
+        for (User user: manager.getUsers()) {
+            user.updateCelebrity();
+        }
+        if (manager.isPushMode()) {
+            for (User user: manager.getUsers()) {
+                user.enableInbox();
+            }
+        }
+        return logPosition;
+    }
+}
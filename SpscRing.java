@@ -0,0 +1,132 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Bounded ring buffer between a single producer thread and a single consumer thread.
+ * The slots can hold objects which are created once and reused: the producer claims a slot and fills its object,
+ * and the consumer reads the object and releases the slot when it is done with it. Values can also be passed through the slots.
+ * The producer makes its claimed slots visible in batches with publish, so the shared counters are written once per batch.
+ * Each side caches the other side's counter and reads it again only when the ring looks full or empty.
+ * @param <T> the type of the objects in the slots.
+ */
+public class SpscRing<T> {
+    private static final int SPINS = 100; // Number of busy waits before the waiting thread starts to park.
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // Number of slots published by the producer.
+    private final AtomicLong tail = new AtomicLong(); // Number of slots released by the consumer.
+    private volatile boolean closed; // Set by the producer after the last slot is published.
+
+    // Fields used only by the producer.
+    private long claimed; // Number of slots claimed so far.
+    private long cachedTail;
+
+    // Fields used only by the consumer.
+    private long consumed; // Number of slots read so far.
+    private long cachedHead;
+
+    /**
+     * Creates a ring whose slots are filled with reusable objects.
+     * @param capacity is the number of slots, it is rounded up to a power of two.
+     * @param factory creates the object of each slot, it can be null for a ring which passes values.
+     */
+    public SpscRing(int capacity, Supplier<T> factory) {
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Object[size];
+        mask = size - 1;
+        if (factory != null) {
+            for (int i = 0; i < size; i++) {
+                slots[i] = factory.get();
+            }
+        }
+    }
+
+    /**
+     * Claims the next slot for the producer. If the ring is full, the claimed slots are published and the producer waits for the consumer.
+     * @return the object of the claimed slot.
+     */
+    public T claim() {
+        int waits = 0;
+        while (claimed - cachedTail >= slots.length) {
+            cachedTail = tail.get();
+            if (claimed - cachedTail >= slots.length) {
+                publish();
+                waits = pause(waits);
+            }
+        }
+        // The slots only ever hold objects of type T.
+        @SuppressWarnings("unchecked")
+        T slot = (T) slots[(int) (claimed++ & mask)];
+        return slot;
+    }
+
+    // Gives back the last claimed slot, which must not be published yet.
+    public void unclaim() {
+        claimed--;
+    }
+
+    // Claims the next slot and places the given value into it.
+    public void offer(T value) {
+        claim();
+        slots[(int) ((claimed - 1) & mask)] = value;
+    }
+
+    // Makes all the claimed slots visible to the consumer.
+    public void publish() {
+        head.lazySet(claimed);
+    }
+
+    // Publishes the claimed slots and tells the consumer that no more slots will come.
+    public void close() {
+        head.set(claimed);
+        closed = true;
+    }
+
+    /**
+     * Returns the object of the next published slot, waiting for the producer if there is none.
+     * The slot stays with the consumer until it is released.
+     * @return the object, or null if the producer has closed the ring and every slot has been read.
+     */
+    public T next() {
+        int waits = 0;
+        while (consumed == cachedHead) {
+            cachedHead = head.get();
+            if (consumed != cachedHead) {
+                break;
+            }
+            if (closed) {
+                // The last slots may have been published right before the ring was closed.
+                cachedHead = head.get();
+                if (consumed == cachedHead) {
+                    return null;
+                }
+                break;
+            }
+            waits = pause(waits);
+        }
+        // The slots only ever hold objects of type T.
+        @SuppressWarnings("unchecked")
+        T slot = (T) slots[(int) (consumed++ & mask)];
+        return slot;
+    }
+
+    // Gives every slot that the consumer has read back to the producer.
+    public void release() {
+        tail.lazySet(consumed);
+    }
+
+    // Waits a little, first by spinning and then by parking, and returns the number of waits so far.
+    private static int pause(int waits) {
+        if (waits < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(20_000);
+        }
+        return waits + 1;
+    }
+}
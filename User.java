@@ -1,64 +1,419 @@
+import java.util.Arrays;
+import java.util.Collections;
+
 public class User {
+    // A cursor is dropped after this many changes by the followed users with no feed read in between,
+    // since keeping it up to date then costs more than collecting the feed again.
+    private static final int CURSOR_IDLE_CHANGES = 16;
+
+
     private String id; // User ID, it is used while hashing.
-    private MyHashMap<String, User> followings; // The users that is being followed.
-    private MyMaxHeap<Post> posts;
-    private MyHashMap<String, Post> seenPosts;
-    private MyHashMap<String, Post> likedPosts;
-    public User(String id) {
+    private int ordinal; // Dense number given to the user at its creation, it is used as the key of the followings.
+
+    // Users and posts are kept by their ordinals, so that the checks below hash a single integer without any boxing.
+    private MyIntHashMap<User> followings; // The users that is being followed.
+    private MyIntHashMap<User> followers; // The users that are following this user, it is used to push new posts to them.
+    private FeedInbox inbox; // Unseen posts of the followed users, kept in the push mode or once the user scrolls. Null otherwise.
+    private MyIntHashMap<User> inboxFollowers; // The followers which keep an inbox, the posts and likes of this user are pushed only to them.
+    private boolean cursor; // True if the inbox is a cursor of the pull mode, which is dropped once the user stops reading it.
+    private boolean scrolled; // True if the user has scrolled since its cursor was last dropped, so the next scroll opens the cursor.
+    private int cursorChanges; // Changes made to the cursor by the followed users since the feed was last read.
+    private MyIntHashMap<User> followedCelebrities; // The followed users whose posts are not pushed to the inbox.
+    private boolean celebrity; // True if the posts of this user are merged into the feeds at read time.
+    private MyIndexedMaxHeap<Post> posts; // The posts of this user, ordered by their likes at all times.
+    private MySkipList<Post> rankedPosts; // The same posts in sorted order, which can be read in order or by rank without copying.
+    private MyRoaringBitmap seenPosts; // Seen posts grow without limit, so they are kept in a compressed bitmap.
+    private MyRoaringBitmap likedPosts;
+    private FeedCache.Entry cachedFeeds; // The chain of the cached feeds of this user, null if none is cached.
+    private MyIntHashMap<User> cachingFollowers; // The followers who have cached feeds, which a new post or like of this user can invalidate.
+    private final FeedManager manager; // The engine of this user, which keeps the follower threshold of the hybrid mode and the counters.
+    public User(String id, int ordinal, FeedManager manager) {
         this.id = id;
-        followings = new MyHashMap<>();
-        posts = new MyMaxHeap<>();
-        seenPosts = new MyHashMap<>();
-        likedPosts = new MyHashMap<>();
+        this.ordinal = ordinal;
+        this.manager = manager;
+        followings = new MyIntHashMap<>();
+        followers = new MyIntHashMap<>();
+        followedCelebrities = new MyIntHashMap<>();
+        posts = new MyIndexedMaxHeap<>();
+        rankedPosts = new MySkipList<>();
+        seenPosts = new MyRoaringBitmap();
+        likedPosts = new MyRoaringBitmap();
     }
     public String getId() {
         return this.id;
     }
+    public int getOrdinal() {
+        return this.ordinal;
+    }
+
+    /**
+     * Starts keeping an inbox for this user, which is filled with the unseen posts of the users that are being followed.
+     */
+    public void enableInbox() {
+        if (inbox == null) {
+            for (User followedUser: followings)
+                followedUser.addInboxFollower(this);
+        }
+        // The unseen posts are gathered first, so that the heap of the inbox is built at once.
+        Post[] unseenPosts = new Post[16];
+        int count = 0;
+        for (User followedUser: followings) {
+            if (followedUser.celebrity)
+                continue;
+            for (Post post: followedUser.posts) {
+                if (!hasSeenPost(post)) {
+                    if (count == unseenPosts.length)
+                        unseenPosts = Arrays.copyOf(unseenPosts, count * 2);
+                    unseenPosts[count++] = post;
+                }
+            }
+        }
+        inbox = new FeedInbox(unseenPosts, count);
+        manager.getFeedStats().pushedPosts.add(count);
+    }
+    public FeedInbox getInbox() {
+        return this.inbox;
+    }
+
+    /**
+     * Opens a cursor for this user on a scroll of the pull mode. The first scroll only marks the user and the second one opens
+     * the cursor, so a user who scrolls once does not pay for keeping a cursor up to date.
+     */
+    public void openCursor() {
+        if (!scrolled) {
+            scrolled = true;
+            return;
+        }
+        enableInbox();
+        cursor = true;
+        cursorChanges = 0;
+    }
+
+    // Notes that the feed of this user is read, so the cursor is still in use.
+    public void markFeedRead() {
+        cursorChanges = 0;
+    }
+
+    // Counts a change made to the cursor by a followed user, and returns true if the user has not read the cursor for too long.
+    private boolean countCursorChange() {
+        return cursor && ++cursorChanges > CURSOR_IDLE_CHANGES;
+    }
 
-    // Follows the corresponding user.
+    // Drops the cursor which is not read anymore. It is opened again if the user scrolls twice.
+    private void closeCursor() {
+        dropInbox();
+        cursor = false;
+        scrolled = false;
+    }
+
+    // Follows the corresponding user. The unseen posts of that user are added to the inbox, unless they are merged at read time.
     public void follow(User user) {
-        this.followings.put(user.getId(), user);
+        if (cachedFeeds != null)
+            FeedCache.invalidateAll(this);
+        this.followings.put(user.ordinal, user);
+        user.followers.put(this.ordinal, this);
+        if (inbox != null)
+            user.addInboxFollower(this);
+        user.updateCelebrity();
+        if (user.celebrity)
+            followedCelebrities.put(user.ordinal, user);
+        else if (inbox != null)
+            pushUnseenPosts(user);
     }
 
-    // Unfollows the corresponding user.
+    // Unfollows the corresponding user. The posts of that user are removed from the inbox.
     public void unfollow(User user) {
-        this.followings.remove(user.getId());
+        if (cachedFeeds != null)
+            FeedCache.invalidateAll(this);
+        this.followings.remove(user.ordinal);
+        user.followers.remove(this.ordinal);
+        if (inbox != null)
+            user.inboxFollowers.remove(this.ordinal);
+        if (user.celebrity)
+            followedCelebrities.remove(user.ordinal);
+        else if (inbox != null)
+            removePosts(user);
+        user.updateCelebrity();
+    }
+
+    // Adds the posts of the given user which are not seen yet to the inbox.
+    private void pushUnseenPosts(User user) {
+        for (Post post: user.posts) {
+            if (!hasSeenPost(post)) {
+                inbox.add(post);
+                manager.getFeedStats().pushedPosts.increment();
+            }
+        }
+    }
+
+    // Removes the posts of the given user from the inbox.
+    private void removePosts(User user) {
+        for (Post post: user.posts) {
+            inbox.remove(post);
+            manager.getFeedStats().removedPosts.increment();
+        }
+    }
+
+    /**
+     * Decides again whether the posts of this user are pushed to the inboxes or merged at read time, after the followers have changed.
+     * When the decision changes, the posts of this user are removed from or added to the inboxes of all the followers.
+     */
+    void updateCelebrity() {
+        int celebrityThreshold = manager.getCelebrityThreshold();
+        if (!celebrity && followers.getSize() > celebrityThreshold) {
+            celebrity = true;
+            manager.getFeedStats().promotions.increment();
+            for (User follower: followers) {
+                follower.followedCelebrities.put(ordinal, this);
+                if (follower.inbox != null) {
+                    follower.removePosts(this);
+                    if (follower.countCursorChange())
+                        follower.closeCursor();
+                }
+            }
+        }
+        // The followers are doubled instead of halving the threshold, which would round a threshold of 1 down to 0 and never demote.
+        else if (celebrity && 2L * followers.getSize() < celebrityThreshold) {
+            celebrity = false;
+            manager.getFeedStats().demotions.increment();
+            for (User follower: followers) {
+                follower.followedCelebrities.remove(ordinal);
+                if (follower.inbox != null) {
+                    follower.pushUnseenPosts(this);
+                    if (follower.countCursorChange())
+                        follower.closeCursor();
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the posts of this user with the given posts, for a snapshot or a bulk load. The heap is built at once from the array,
+     * in linear time, and the sorted posts are built at once from a sorted copy of it.
+     * @param restoredPosts is the array of all the posts of this user, whose likes are already set.
+     */
+    void restorePosts(Post[] restoredPosts) {
+        invalidateFollowerFeeds(null);
+        posts = new MyIndexedMaxHeap<>(restoredPosts);
+        Post[] sortedPosts = restoredPosts.clone();
+        Arrays.sort(sortedPosts, Collections.reverseOrder());
+        rankedPosts = new MySkipList<>(sortedPosts);
+    }
+
+    // Restores the follow from a snapshot, without updating any inbox, which are created after the whole graph is restored.
+    void restoreFollow(User user) {
+        if (cachedFeeds != null)
+            FeedCache.invalidateAll(this);
+        this.followings.put(user.ordinal, user);
+        user.followers.put(this.ordinal, this);
+        if (inbox != null)
+            user.addInboxFollower(this);
+    }
+
+    // Makes room in the followings and followers for the follows of a bulk load, so that they are not rehashed again and again.
+    void ensureFollowCapacity(int followingCount, int followerCount) {
+        followings.ensureCapacity(followingCount);
+        followers.ensureCapacity(followerCount);
+    }
+
+    // Drops the inbox while the graph is changed in bulk, it is built again with enableInbox afterwards.
+    void dropInbox() {
+        if (inbox != null) {
+            for (User followedUser: followings)
+                followedUser.inboxFollowers.remove(ordinal);
+        }
+        inbox = null;
+    }
+
+    // Restores the seen and liked posts from a snapshot, given as arrays of post ordinals.
+    void restorePostSets(int[] seen, int[] liked) {
+        if (cachedFeeds != null)
+            FeedCache.invalidateAll(this);
+        seenPosts.addAll(seen, seen.length);
+        likedPosts.addAll(liked, liked.length);
     }
 
     // Returns true if this user is following the corresponding user.
     public boolean isFollowing(User user) {
-        return this.followings.containsKey(user.getId());
+        return this.followings.containsKey(user.ordinal);
     }
+    // The post is pushed to the inboxes of the followers, unless it is merged at read time.
     public void createPost(Post post) {
         posts.insert(post);
+        rankedPosts.insert(post);
+        invalidateFollowerFeeds(post);
+        updateInboxes(post, true);
     }
     public void see(Post post) {
-        seenPosts.put(post.getId(), post);
+        seenPosts.add(post.getOrdinal());
+        if (cachedFeeds != null)
+            FeedCache.invalidateSeen(this, post);
+        if (inbox != null && !post.getAuthor().celebrity) {
+            inbox.remove(post);
+            manager.getFeedStats().removedPosts.increment();
+        }
     }
+    // All the posts of the user are added to the seen posts at once.
     public void seeAllPosts(User user) {
+        int[] ordinals = new int[user.posts.getSize()];
+        int count = 0;
         for (Post post: user.posts) {
-            see(post);
+            ordinals[count++] = post.getOrdinal();
         }
+        seenPosts.addAll(ordinals, count);
+        if (cachedFeeds != null)
+            FeedCache.invalidateAll(this);
+        if (inbox != null && !user.celebrity)
+            removePosts(user);
     }
     public boolean hasLikedPost(Post post) {
-        return this.likedPosts.containsKey(post.getId());
+        return this.likedPosts.contains(post.getOrdinal());
     }
     public boolean hasSeenPost(Post post) {
-        return this.seenPosts.containsKey(post.getId());
+        return this.seenPosts.contains(post.getOrdinal());
     }
-    public void like(Post post) {
+    /**
+     * Likes the post.
+     * @param post is the post to be liked.
+     * @param ranking is the ranking of all the posts which the post is moved in, or null if there is none.
+     */
+    public void like(Post post, MySkipList<Post> ranking) {
         see(post);
-        post.incrementLike();
-        likedPosts.put(post.getId(), post);
+        post.getAuthor().changeLikes(post, true, ranking);
+        likedPosts.add(post.getOrdinal());
     }
-    public void unlike(Post post) {
-        post.decrementLike();
-        likedPosts.remove(post.getId());
+    public void unlike(Post post, MySkipList<Post> ranking) {
+        post.getAuthor().changeLikes(post, false, ranking);
+        likedPosts.remove(post.getOrdinal());
+    }
+
+    /**
+     * Changes the likes of a post of this user, and moves the post to its new place in every structure ordered by likes.
+     * The skip lists can only find the post under its old likes, so their updates are started before the likes change.
+     * The ranking of all the posts is shared by the authors, so it is locked from the start of its update to its end.
+     * The rest is done without that lock.
+     * @param post is the post of this user.
+     * @param increment is true if the post is liked, false if it is unliked.
+     * @param ranking is the ranking of all the posts, or null if there is none.
+     */
+    private void changeLikes(Post post, boolean increment, MySkipList<Post> ranking) {
+        rankedPosts.startUpdate(post);
+        if (ranking != null) {
+            synchronized (ranking) {
+                ranking.startUpdate(post);
+                countLike(post, increment);
+                ranking.finishUpdate();
+            }
+        }
+        else {
+            countLike(post, increment);
+        }
+        rankedPosts.finishUpdate();
+        if (increment)
+            posts.increaseKey(post);
+        else
+            posts.decreaseKey(post);
+        invalidateFollowerFeeds(post);
+        updateInboxes(post, false);
+    }
+    private static void countLike(Post post, boolean increment) {
+        if (increment)
+            post.incrementLike();
+        else
+            post.decrementLike();
+    }
+
+    // Drops the cached feeds of the followers which the new or changed post can get into, or all of them if the post is null.
+    private void invalidateFollowerFeeds(Post post) {
+        if (cachingFollowers == null || cachingFollowers.getSize() == 0)
+            return;
+        // The followers are copied first, since the invalidations remove them from the map.
+        User[] followersWithFeeds = new User[cachingFollowers.getSize()];
+        int count = 0;
+        for (User follower: cachingFollowers)
+            followersWithFeeds[count++] = follower;
+        for (User follower: followersWithFeeds) {
+            if (post == null)
+                FeedCache.invalidateAll(follower);
+            else
+                FeedCache.invalidateCandidate(follower, post);
+        }
     }
-    public MyHashMap<String, User> getFollowings() {
+
+    /**
+     * Pushes the new post of this user to the inboxes of the followers, or moves the post to its new place in them after its likes
+     * have changed. The cursors which are not read anymore are dropped afterwards, since dropping one changes the followers with inboxes.
+     * @param post is the post of this user.
+     * @param created is true if the post is new.
+     */
+    private void updateInboxes(Post post, boolean created) {
+        if (celebrity || inboxFollowers == null || inboxFollowers.getSize() == 0)
+            return;
+        User[] idleFollowers = null;
+        int idleCount = 0;
+        for (User follower: inboxFollowers) {
+            if (created) {
+                follower.inbox.add(post);
+                manager.getFeedStats().pushedPosts.increment();
+            }
+            else {
+                follower.inbox.update(post);
+                manager.getFeedStats().rerankedPosts.increment();
+            }
+            if (follower.countCursorChange()) {
+                if (idleFollowers == null)
+                    idleFollowers = new User[inboxFollowers.getSize()];
+                idleFollowers[idleCount++] = follower;
+            }
+        }
+        for (int i = 0; i < idleCount; i++)
+            idleFollowers[i].closeCursor();
+    }
+    public MyIntHashMap<User> getFollowings() {
         return this.followings;
     }
-    public MyMaxHeap<Post> getPosts() {
+    public MyIntHashMap<User> getFollowers() {
+        return this.followers;
+    }
+    public MyIntHashMap<User> getFollowedCelebrities() {
+        return this.followedCelebrities;
+    }
+    public boolean isCelebrity() {
+        return this.celebrity;
+    }
+    public MyRoaringBitmap getSeenPosts() {
+        return this.seenPosts;
+    }
+    public MyRoaringBitmap getLikedPosts() {
+        return this.likedPosts;
+    }
+    public MyIndexedMaxHeap<Post> getPosts() {
         return this.posts;
     }
+
+    // Returns the posts of this user sorted by their likes. The top posts and the rank of a post can be read from it directly.
+    public MySkipList<Post> getRankedPosts() {
+        return this.rankedPosts;
+    }
+
+    // The cached feeds are kept by FeedCache.
+    FeedCache.Entry getCachedFeeds() {
+        return this.cachedFeeds;
+    }
+    void setCachedFeeds(FeedCache.Entry cachedFeeds) {
+        this.cachedFeeds = cachedFeeds;
+    }
+    void addCachingFollower(User follower) {
+        if (cachingFollowers == null)
+            cachingFollowers = new MyIntHashMap<>();
+        cachingFollowers.put(follower.ordinal, follower);
+    }
+    void removeCachingFollower(User follower) {
+        cachingFollowers.remove(follower.ordinal);
+    }
+    private void addInboxFollower(User follower) {
+        if (inboxFollowers == null)
+            inboxFollowers = new MyIntHashMap<>();
+        inboxFollowers.put(follower.ordinal, follower);
+    }
 }
\ No newline at end of file
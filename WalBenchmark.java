@@ -0,0 +1,62 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compares the replay of an input file without a log, with a log which is forced to the disk after every command,
+ * and with logs which are committed in groups of different sizes. For every run it reports the time, the commands per second
+ * and the number of times the log is forced. The log is also forced before every buffer of output is written,
+ * so groups larger than the commands of an output buffer are cut at the buffer. The log and the output are written into the given directory,
+ * which should be on the disk to be measured, since a temporary file system does not really force anything.
+ * Usage: java WalBenchmark input directory [group sizes...]
+ */
+public class WalBenchmark {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java WalBenchmark input directory [group sizes...]");
+            return;
+        }
+        String inputFileName = args[0];
+        Path directory = Path.of(args[1]);
+        int[] groupSizes = {1, 16, 256, WriteAheadLog.DEFAULT_GROUP_SIZE, 16384};
+        if (args.length > 2) {
+            groupSizes = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                groupSizes[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+        long commands = Files.lines(Path.of(inputFileName)).count();
+        String outputFileName = directory.resolve("benchmark-output.txt").toString();
+        String logFileName = directory.resolve("benchmark.log").toString();
+
+        // The first runs warm up the code, and are not measured.
+        for (int i = 0; i < 5; i++) {
+            run(inputFileName, outputFileName, null);
+        }
+        report("no log", commands, run(inputFileName, outputFileName, null), 0);
+        for (int groupSize: groupSizes) {
+            Files.deleteIfExists(Path.of(logFileName));
+            WriteAheadLog log = new WriteAheadLog(logFileName, 0, groupSize);
+            long time = run(inputFileName, outputFileName, log);
+            report(groupSize == 1 ? "force per command" : "group of " + groupSize, commands, time, log.getSyncCount());
+        }
+        Files.deleteIfExists(Path.of(logFileName));
+        Files.deleteIfExists(Path.of(outputFileName));
+    }
+
+    // Replays the input file with the given log, which is closed afterwards, and returns the time in nanoseconds.
+    private static long run(String inputFileName, String outputFileName, WriteAheadLog log) throws IOException {
+        FeedManager manager = new FeedManager();
+        manager.setCommandLog(log);
+        long start = System.nanoTime();
+        manager.scanFile(inputFileName, outputFileName);
+        if (log != null) {
+            log.close();
+        }
+        return System.nanoTime() - start;
+    }
+    private static void report(String name, long commands, long time, long syncs) {
+        double seconds = time / 1e9;
+        System.out.printf("%-20s %8.3f s %12.0f commands per second %10d forces%n", name, seconds, commands / seconds, syncs);
+    }
+}
@@ -0,0 +1,343 @@
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Writes a synthetic input file in the format read by FeedManager.scanFile, which is the same for every run with the same options.
+ * The file starts with a seed which creates the users, their first posts and their follows, in the format loaded by BulkLoader,
+ * and goes on with a random mix of commands.
+ *
+ * The followed users are drawn from a Zipf distribution, so the follower counts follow a power law: user0 is the most followed
+ * user, user1 the second and so on. The authors of the liked and seen posts are drawn from a Zipf distribution as well,
+ * with an exponent of its own, so the likes pile up on the posts of a few users. The users who give the commands are drawn uniformly.
+ * The commands are written as they are generated, and only the post count of every user is kept, so the memory does not grow
+ * with the number of commands. Since nothing is remembered about the follows, some follows and unfollows fail like in real input.
+ *
+ * Usage: java WorkloadGenerator [options] output
+ *   --users=N              number of users (10000)
+ *   --posts=N              posts of every user in the seed (10)
+ *   --follows=N            mean number of follows of a user in the seed, from 0 to twice the mean (20)
+ *   --commands=N           number of commands after the seed (1000000)
+ *   --seed=N               seed of the random numbers (42)
+ *   --follow-skew=S        Zipf exponent of the followed users, 0 for uniform (1.0)
+ *   --like-skew=S          Zipf exponent of the authors of the liked and seen posts, 0 for uniform (1.2)
+ *   --feed-n=N             largest N of generate_feed and trending_posts, N is drawn from 1 to it (10)
+ *   --scroll-n=N           largest number of posts of scroll_through_feed (5)
+ *   --like-probability=P   probability that a scrolled post is liked (0.3)
+ *   --mix=command:weight,...   relative weights of the commands after the seed, the commands which are not given are not generated
+ */
+public class WorkloadGenerator {
+    // The commands which can be generated after the seed, and their default weights.
+    private static final CommandType[] MIX_TYPES = {
+            CommandType.CREATE_POST, CommandType.TOGGLE_LIKE, CommandType.SEE_POST, CommandType.FOLLOW_USER,
+            CommandType.UNFOLLOW_USER, CommandType.SEE_ALL_POSTS_FROM_USER, CommandType.GENERATE_FEED,
+            CommandType.SCROLL_THROUGH_FEED, CommandType.SORT_POSTS, CommandType.TRENDING_POSTS};
+    private static final int[] DEFAULT_WEIGHTS = {5, 35, 10, 4, 1, 2, 25, 13, 5, 0};
+
+    private int userCount = 10_000;
+    private int postsPerUser = 10;
+    private int meanFollows = 20;
+    private long commandCount = 1_000_000;
+    private long seed = 42;
+    private double followSkew = 1.0;
+    private double likeSkew = 1.2;
+    private int maxFeedSize = 10;
+    private int maxScrollSize = 5;
+    private double likeProbability = 0.3;
+    private int[] weights = DEFAULT_WEIGHTS.clone();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java WorkloadGenerator [options] output");
+            return;
+        }
+        WorkloadGenerator generator = new WorkloadGenerator();
+        for (int i = 0; i < args.length - 1; i++) {
+            if (!generator.setOption(args[i])) {
+                System.out.println("Unknown option " + args[i] + ".");
+                return;
+            }
+        }
+        long start = System.nanoTime();
+        long lines = generator.write(args[args.length - 1]);
+        System.out.printf("Wrote %d commands into %s in %.2f s.%n", lines, args[args.length - 1], (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Sets an option given as --name=value.
+     * @param option is the option with its value.
+     * @return true if the option is known, false otherwise.
+     */
+    public boolean setOption(String option) {
+        int equals = option.indexOf('=');
+        if (!option.startsWith("--") || equals < 0) {
+            return false;
+        }
+        String value = option.substring(equals + 1);
+        switch (option.substring(2, equals)) {
+            case ("users"): {
+                userCount = Integer.parseInt(value);
+                break;
+            }
+            case ("posts"): {
+                postsPerUser = Integer.parseInt(value);
+                break;
+            }
+            case ("follows"): {
+                meanFollows = Integer.parseInt(value);
+                break;
+            }
+            case ("commands"): {
+                commandCount = Long.parseLong(value);
+                break;
+            }
+            case ("seed"): {
+                seed = Long.parseLong(value);
+                break;
+            }
+            case ("follow-skew"): {
+                followSkew = Double.parseDouble(value);
+                break;
+            }
+            case ("like-skew"): {
+                likeSkew = Double.parseDouble(value);
+                break;
+            }
+            case ("feed-n"): {
+                maxFeedSize = Integer.parseInt(value);
+                break;
+            }
+            case ("scroll-n"): {
+                maxScrollSize = Integer.parseInt(value);
+                break;
+            }
+            case ("like-probability"): {
+                likeProbability = Double.parseDouble(value);
+                break;
+            }
+            case ("mix"): {
+                setMix(value);
+                break;
+            }
+            default: {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Sets the weights of the commands from a list like "toggle_like:40,generate_feed:20".
+    private void setMix(String mix) {
+        weights = new int[MIX_TYPES.length];
+        for (String entry: mix.split(",")) {
+            String[] parts = entry.split(":");
+            CommandType type = CommandType.of(parts[0]);
+            int index = -1;
+            for (int i = 0; i < MIX_TYPES.length; i++) {
+                if (MIX_TYPES[i] == type) {
+                    index = i;
+                }
+            }
+            if (index < 0 || parts.length != 2) {
+                throw new IllegalArgumentException("The mix cannot have " + entry + ".");
+            }
+            weights[index] = Integer.parseInt(parts[1]);
+        }
+    }
+
+    /**
+     * Writes the seed and the commands after it into the file.
+     * @param fileName is the name of the file to write.
+     * @return the number of commands which are written.
+     * @throws IOException if the file cannot be written.
+     */
+    public long write(String fileName) throws IOException {
+        if (userCount < 2 || postsPerUser < 1 || maxFeedSize < 1 || maxScrollSize < 1) {
+            throw new IllegalArgumentException("There must be at least two users, and at least one post, feed post and scrolled post.");
+        }
+        int totalWeight = 0;
+        for (int weight: weights) {
+            totalWeight += weight;
+        }
+        if (totalWeight <= 0) {
+            throw new IllegalArgumentException("The mix must have a positive weight.");
+        }
+
+        Random random = new Random(seed);
+        ZipfSampler followed = new ZipfSampler(userCount, followSkew, random);
+        ZipfSampler authors = new ZipfSampler(userCount, likeSkew, random);
+        int[] postCounts = new int[userCount]; // The posts of a user are post<user>_0 to post<user>_<count - 1>.
+        long lines = 0;
+
+        try (OutputSink out = new OutputSink(fileName)) {
+            // The seed: the users, then the posts and follows of every user.
+            for (int i = 0; i < userCount; i++) {
+                out.append("create_user user").append(i).newLine();
+                lines++;
+            }
+            for (int i = 0; i < userCount; i++) {
+                for (int j = 0; j < postsPerUser; j++) {
+                    appendCreatePost(out, i, postCounts, random);
+                    lines++;
+                }
+                int follows = random.nextInt(2 * meanFollows + 1);
+                for (int j = 0; j < follows; j++) {
+                    out.append("follow_user user").append(i).append(" user").append(otherUser(followed, i)).newLine();
+                    lines++;
+                }
+            }
+
+            for (long c = 0; c < commandCount; c++) {
+                int user = random.nextInt(userCount);
+                int choice = random.nextInt(totalWeight);
+                int index = 0;
+                while (choice >= weights[index]) {
+                    choice -= weights[index++];
+                }
+                switch (MIX_TYPES[index]) {
+                    case CREATE_POST: {
+                        appendCreatePost(out, user, postCounts, random);
+                        break;
+                    }
+                    case TOGGLE_LIKE:
+                    case SEE_POST: {
+                        int author = authors.sample() - 1;
+                        out.append(MIX_TYPES[index].getWord()).append(" user").append(user)
+                                .append(" post").append(author).append("_").append(random.nextInt(postCounts[author])).newLine();
+                        break;
+                    }
+                    case FOLLOW_USER:
+                    case UNFOLLOW_USER: {
+                        out.append(MIX_TYPES[index].getWord()).append(" user").append(user)
+                                .append(" user").append(otherUser(followed, user)).newLine();
+                        break;
+                    }
+                    case SEE_ALL_POSTS_FROM_USER: {
+                        out.append("see_all_posts_from_user user").append(user)
+                                .append(" user").append(authors.sample() - 1).newLine();
+                        break;
+                    }
+                    case GENERATE_FEED: {
+                        out.append("generate_feed user").append(user).append(" ").append(1 + random.nextInt(maxFeedSize)).newLine();
+                        break;
+                    }
+                    case SCROLL_THROUGH_FEED: {
+                        int num = 1 + random.nextInt(maxScrollSize);
+                        out.append("scroll_through_feed user").append(user).append(" ").append(num);
+                        for (int j = 0; j < num; j++) {
+                            out.append(random.nextDouble() < likeProbability ? " 1" : " 0");
+                        }
+                        out.newLine();
+                        break;
+                    }
+                    case TRENDING_POSTS: {
+                        // Half of the rankings are global, the other half are of an author drawn like the authors of the liked posts.
+                        out.append("trending_posts ").append(1 + random.nextInt(maxFeedSize));
+                        if (random.nextBoolean())
+                            out.append(" user").append(authors.sample() - 1);
+                        out.newLine();
+                        break;
+                    }
+                    default: {
+                        out.append("sort_posts user").append(user).newLine();
+                        break;
+                    }
+                }
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    // Writes a create_post command with the next post ID of the user.
+    private static void appendCreatePost(OutputSink out, int user, int[] postCounts, Random random) throws IOException {
+        out.append("create_post user").append(user).append(" post").append(user).append("_").append(postCounts[user]++)
+                .append(" content").append(random.nextInt(1000)).newLine();
+    }
+
+    // Draws a followed user who is not the given user.
+    private static int otherUser(ZipfSampler followed, int user) {
+        int other;
+        do {
+            other = followed.sample() - 1;
+        } while (other == user);
+        return other;
+    }
+
+    /**
+     * Draws integers from 1 to n, where k is drawn with a probability proportional to 1 / k^exponent.
+     * It uses the rejection-inversion method of Hormann and Derflinger, which takes constant time and memory for any n,
+     * instead of a table of the cumulative probabilities of all the integers.
+     */
+    static class ZipfSampler {
+        private final int n;
+        private final double exponent;
+        private final Random random;
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double s;
+
+        ZipfSampler(int n, double exponent, Random random) {
+            if (n < 1 || exponent < 0) {
+                throw new IllegalArgumentException("A Zipf distribution needs n of at least 1 and an exponent of at least 0.");
+            }
+            this.n = n;
+            this.exponent = exponent;
+            this.random = random;
+            hIntegralX1 = hIntegral(1.5) - 1;
+            hIntegralN = hIntegral(n + 0.5);
+            s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        int sample() {
+            if (exponent == 0) {
+                return 1 + random.nextInt(n);
+            }
+            while (true) {
+                // A point is drawn under a continuous hat function, and accepted if it is under the step of its integer.
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) (x + 0.5);
+                if (k < 1) {
+                    k = 1;
+                } else if (k > n) {
+                    k = n;
+                }
+                if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        // The integral of h from 1 to x, up to a constant.
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return helper2((1 - exponent) * logX) * logX;
+        }
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+        private double hIntegralInverse(double x) {
+            double t = x * (1 - exponent);
+            if (t < -1) {
+                t = -1; // Rounding errors can take t below -1.
+            }
+            return Math.exp(helper1(t) * x);
+        }
+
+        // log(1 + x) / x, which stays accurate near 0.
+        private static double helper1(double x) {
+            if (Math.abs(x) > 1e-8) {
+                return Math.log1p(x) / x;
+            }
+            return 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        // (exp(x) - 1) / x, which stays accurate near 0.
+        private static double helper2(double x) {
+            if (Math.abs(x) > 1e-8) {
+                return Math.expm1(x) / x;
+            }
+            return 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only log of the command lines which change the users or posts, written before the commands are applied.
+ * After a crash, the state is recovered by restoring the latest snapshot and replaying the commands which were logged after it.
+ * Every record is the length of the line, the CRC-32C checksum of its bytes and the bytes of the line as they are in the input.
+ * A scroll is logged as its command line, since replaying it on the same state sees and likes the same posts again.
+ *
+ * Forcing the file to the disk after every command would limit the replay to a few thousand commands per second, so the records
+ * are committed in groups: the file is forced once for a number of commands, and always before any output of them is written.
+ * So an output line is never seen for a command which could be lost, and a crash loses at most the last group, whose output is not written.
+ * The log is used by the single thread which executes the commands.
+ */
+public class WriteAheadLog implements Closeable {
+    public static final int DEFAULT_GROUP_SIZE = 1024;
+    private static final int HEADER_SIZE = 8; // The length and the checksum of a record.
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CRC32C checksum = new CRC32C();
+    private final int groupSize;
+    private int pending; // Number of records which are not forced to the disk yet.
+    private long end; // Position after the last record, including the records in the buffer.
+    private long syncCount;
+
+    /**
+     * Opens the log for appending. Anything after the given position, such as a record which was cut by a crash, is removed.
+     * @param fileName is the name of the log file, which is created if it does not exist.
+     * @param position is the position after the last valid record, which is returned by recover.
+     * @param groupSize is the number of commands which are committed together, 1 forces the file after every command.
+     * @throws IOException if the file cannot be opened.
+     */
+    public WriteAheadLog(String fileName, long position, int groupSize) throws IOException {
+        if (groupSize < 1) {
+            throw new IllegalArgumentException("Illegal group size: " + groupSize);
+        }
+        channel = FileChannel.open(Path.of(fileName), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        channel.truncate(position);
+        channel.position(position);
+        this.groupSize = groupSize;
+        this.end = position;
+    }
+
+    /**
+     * Appends the command line to the log, and commits the group if it is full.
+     * @param line is the command line, which is logged before it is applied.
+     * @throws IOException if the log cannot be written.
+     */
+    public void append(CommandLine line) throws IOException {
+        int length = line.getByteLength();
+        if (buffer.remaining() < HEADER_SIZE + length) {
+            writeBuffer();
+            // A line longer than the buffer gets a buffer of its own size.
+            if (buffer.capacity() < HEADER_SIZE + length) {
+                buffer = ByteBuffer.allocate(HEADER_SIZE + length);
+            }
+        }
+        int start = buffer.position() + HEADER_SIZE;
+        line.copyBytes(buffer.array(), start);
+        checksum.reset();
+        checksum.update(buffer.array(), start, length);
+        buffer.putInt(length);
+        buffer.putInt((int) checksum.getValue());
+        buffer.position(start + length);
+        end += HEADER_SIZE + length;
+        if (++pending >= groupSize) {
+            commit();
+        }
+    }
+
+    /**
+     * Writes the records in the buffer and forces them to the disk, so the commands logged so far survive a crash.
+     * @throws IOException if the log cannot be written.
+     */
+    public void commit() throws IOException {
+        if (pending == 0) {
+            return;
+        }
+        writeBuffer();
+        channel.force(false);
+        pending = 0;
+        syncCount++;
+    }
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Returns the position after the last record, which a snapshot of the current state records.
+    public long position() {
+        return end;
+    }
+
+    // Returns the number of times the file is forced to the disk.
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    /**
+     * Wraps the target of an output sink, so that the log is committed before any output is written.
+     * @param target is the target which writes the output.
+     * @return the target which commits the log and then writes the output.
+     */
+    public OutputSink.Target before(OutputSink.Target target) {
+        return new CommittingTarget(target);
+    }
+
+    /**
+     * Target which commits the log before it passes a buffer of output to the wrapped target.
+     */
+    private class CommittingTarget implements OutputSink.Target {
+        private final OutputSink.Target target;
+
+        CommittingTarget(OutputSink.Target target) {
+            this.target = target;
+        }
+        @Override
+        public byte[] write(byte[] buffer, int length) throws IOException {
+            commit();
+            return target.write(buffer, length);
+        }
+        @Override
+        public void close() throws IOException {
+            target.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        commit();
+        channel.close();
+    }
+
+    /**
+     * Restores the latest snapshot into the manager, if there is one, and replays the commands of the log which are after it.
+     * The output of the replayed commands is dropped, since it was written before the crash.
+     * The log ends at the first record which is cut or does not match its checksum, which is where the crash happened.
+     * @param manager is the empty manager which receives the state.
+     * @param snapshotFileName is the name of the snapshot file, or null if there is none.
+     * @param logFileName is the name of the log file, which may not exist yet.
+     * @return the position after the last valid record, where the log continues.
+     * @throws IOException if a file cannot be read, or the log is shorter than the snapshot.
+     */
+    public static long recover(FeedManager manager, String snapshotFileName, String logFileName) throws IOException {
+        long position = 0;
+        if (snapshotFileName != null && Files.exists(Path.of(snapshotFileName))) {
+            position = Snapshot.read(manager, snapshotFileName);
+        }
+        if (!Files.exists(Path.of(logFileName))) {
+            if (position > 0) {
+                throw new IOException("The log " + logFileName + " of the snapshot is missing.");
+            }
+            return 0;
+        }
+
+        try (FileChannel channel = FileChannel.open(Path.of(logFileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (position > size) {
+                throw new IOException("The log " + logFileName + " ends before the snapshot.");
+            }
+            channel.position(position);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.limit(0);
+            CRC32C checksum = new CRC32C();
+            CommandLine line = new CommandLine();
+            FeedManager.Command command = new FeedManager.Command();
+            OutputSink dropped = new OutputSink();
+
+            while (fill(channel, buffer, HEADER_SIZE)) {
+                int start = buffer.position();
+                int length = buffer.getInt(start);
+                int expected = buffer.getInt(start + 4);
+                if (length < 0 || length > size - position - HEADER_SIZE) {
+                    break;
+                }
+                if (buffer.capacity() < HEADER_SIZE + length) {
+                    ByteBuffer larger = ByteBuffer.allocate(HEADER_SIZE + length);
+                    larger.put(buffer);
+                    larger.flip();
+                    buffer = larger;
+                }
+                if (!fill(channel, buffer, HEADER_SIZE + length)) {
+                    break;
+                }
+                start = buffer.position();
+                checksum.reset();
+                checksum.update(buffer.array(), start + HEADER_SIZE, length);
+                if ((int) checksum.getValue() != expected) {
+                    break;
+                }
+                line.set(buffer, start + HEADER_SIZE, start + HEADER_SIZE + length);
+                if (manager.resolve(line, command)) {
+                    manager.apply(command, dropped);
+                    dropped.reset();
+                }
+                buffer.position(start + HEADER_SIZE + length);
+                position += HEADER_SIZE + length;
+            }
+        }
+        return position;
+    }
+
+    // Makes sure that the given number of bytes are in the buffer, and returns false if the file ends before them.
+    private static boolean fill(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes && channel.read(buffer) > 0) {
+            // The channel is read until enough bytes are in the buffer or the file ends.
+        }
+        buffer.flip();
+        return buffer.remaining() >= bytes;
+    }
+}
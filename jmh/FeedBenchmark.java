@@ -0,0 +1,98 @@
+package jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The generate_feed, scroll_through_feed and sort_posts handlers of FeedManager, on the synthetic graph of MicroBenchmarks.
+ * Every invocation executes one command of a random user through FeedManager.execute, which was parsed before the measurement,
+ * and its output is written in memory and dropped. A scroll marks the posts it shows as seen, so the graph of scrollThroughFeed
+ * is built again for every iteration, and the feeds get shorter during an iteration as they do in a long run. The allocation
+ * profiler counts that building too, so the bytes and the collections of scrollThroughFeed are mostly those of the graph.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FeedBenchmark {
+    private static final int COMMANDS = 20_000; // Number of different commands of a benchmark, which are executed in turn.
+
+    /**
+     * The graph and the parsed commands of a benchmark.
+     */
+    abstract static class Graph {
+        Subjects.Feed feed;
+        Object[] commands;
+        int next;
+
+        void build(String format, long seed) {
+            feed = Subjects.FACTORY.newFeed();
+            if (commands == null) {
+                Random random = new Random(seed);
+                commands = new Object[COMMANDS];
+                for (int i = 0; i < COMMANDS; i++) {
+                    commands[i] = feed.parse(String.format(format, random.nextInt(Subjects.FACTORY.feedUsers())));
+                }
+            }
+        }
+
+        long executeNext() {
+            Object command = commands[next];
+            next = next + 1 == commands.length ? 0 : next + 1;
+            return feed.execute(command);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class GenerateFeed extends Graph {
+        @Setup(Level.Trial)
+        public void setUp() {
+            build("generate_feed user%d 10", 1);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ScrollThroughFeed extends Graph {
+        @Setup(Level.Iteration)
+        public void setUp() {
+            build("scroll_through_feed user%d 5 1 0 0 1 0", 2);
+            next = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SortPosts extends Graph {
+        @Setup(Level.Trial)
+        public void setUp() {
+            build("sort_posts user%d", 3);
+        }
+    }
+
+    @Benchmark
+    public long generateFeed(GenerateFeed graph) {
+        return graph.executeNext();
+    }
+
+    @Benchmark
+    public long scrollThroughFeed(ScrollThroughFeed graph) {
+        return graph.executeNext();
+    }
+
+    @Benchmark
+    public long sortPosts(SortPosts graph) {
+        return graph.executeNext();
+    }
+}
@@ -0,0 +1,120 @@
+package jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MyHashMap with user IDs as keys, at several sizes. put fills an empty map, which rehashes as it grows, and putPresized fills
+ * a map sized for all the keys, so their difference is the cost of the rehashing. remove empties a full map. These three measure
+ * the whole map, so their time is for size operations, in microseconds. get looks up a single key of a full map, in a shuffled order,
+ * and its time is in nanoseconds. The allocation profiler counts the setup of an invocation too, so the bytes of remove are
+ * mostly those of the map it empties.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HashMapBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    private String[] keys;
+    private Subjects.StringMap full; // Holds all the keys, for get.
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUpKeys() {
+        keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = "user" + i;
+        }
+        // The same shuffle for every run.
+        Random random = new Random(42);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+        full = fill(Subjects.FACTORY.newMap(0));
+    }
+
+    private Subjects.StringMap fill(Subjects.StringMap target) {
+        for (String key: keys) {
+            target.put(key, key);
+        }
+        return target;
+    }
+
+    // The maps below are new for every invocation of put, putPresized and remove.
+    @State(Scope.Thread)
+    public static class EmptyMap {
+        Subjects.StringMap map;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            map = Subjects.FACTORY.newMap(0);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PresizedMap {
+        Subjects.StringMap map;
+
+        @Setup(Level.Invocation)
+        public void setUp(HashMapBenchmark benchmark) {
+            map = Subjects.FACTORY.newMap(benchmark.size);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FullMap {
+        Subjects.StringMap map;
+
+        @Setup(Level.Invocation)
+        public void setUp(HashMapBenchmark benchmark) {
+            map = benchmark.fill(Subjects.FACTORY.newMap(0));
+        }
+    }
+
+    @Benchmark
+    public int put(EmptyMap empty) {
+        return fill(empty.map).size();
+    }
+
+    @Benchmark
+    public int putPresized(PresizedMap presized) {
+        return fill(presized.map).size();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String get() {
+        String key = keys[next];
+        next = next + 1 == keys.length ? 0 : next + 1;
+        return full.get(key);
+    }
+
+    @Benchmark
+    public int remove(FullMap fullMap) {
+        for (String key: keys) {
+            fullMap.map.remove(key);
+        }
+        return fullMap.map.size();
+    }
+}
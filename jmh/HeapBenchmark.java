@@ -0,0 +1,79 @@
+package jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MyMaxHeap of random integers, at several sizes: insert fills an empty heap one value at a time, build constructs the heap
+ * from all the values at once, and deleteMax empties a full heap. Every benchmark measures the whole heap, so its time is
+ * for size operations. The values are boxed before the measurement. The allocation profiler counts the setup of an invocation
+ * too, so the bytes of deleteMax are those of the heap it empties.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HeapBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    private Integer[] values;
+
+    @Setup(Level.Trial)
+    public void setUpValues() {
+        Random random = new Random(42);
+        values = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = random.nextInt();
+        }
+    }
+
+    // A full heap for every invocation of deleteMax.
+    @State(Scope.Thread)
+    public static class FullHeap {
+        Subjects.IntHeap heap;
+
+        @Setup(Level.Invocation)
+        public void setUp(HeapBenchmark benchmark) {
+            heap = Subjects.FACTORY.buildHeap(benchmark.values);
+        }
+    }
+
+    @Benchmark
+    public Integer insert() {
+        Subjects.IntHeap heap = Subjects.FACTORY.newHeap();
+        for (Integer value: values) {
+            heap.insert(value);
+        }
+        return heap.findMax();
+    }
+
+    @Benchmark
+    public Integer build() {
+        return Subjects.FACTORY.buildHeap(values).findMax();
+    }
+
+    @Benchmark
+    public long deleteMax(FullHeap full) {
+        long total = 0;
+        while (!full.heap.isEmpty()) {
+            total += full.heap.deleteMax();
+        }
+        return total;
+    }
+}
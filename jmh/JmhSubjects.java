@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import jmh.Subjects;
+
+/**
+ * Implements the interfaces of jmh.Subjects over the classes of the project, for the JMH benchmarks in jmh/.
+ * It is in the default package, like the project, and it is only compiled by the jmh profile of the build.
+ */
+public class JmhSubjects implements Subjects.Factory {
+    @Override
+    public Subjects.StringMap newMap(int expectedSize) {
+        MyHashMap<String, String> map = new MyHashMap<>(16, 0.75f, true);
+        if (expectedSize > 0) {
+            map.ensureCapacity(expectedSize);
+        }
+        return new Subjects.StringMap() {
+            @Override
+            public void put(String key, String value) {
+                map.put(key, value);
+            }
+            @Override
+            public String get(String key) {
+                return map.get(key);
+            }
+            @Override
+            public void remove(String key) {
+                map.remove(key);
+            }
+            @Override
+            public int size() {
+                return map.getSize();
+            }
+        };
+    }
+
+    @Override
+    public Subjects.IntHeap newHeap() {
+        return heap(new MyMaxHeap<>());
+    }
+
+    @Override
+    public Subjects.IntHeap buildHeap(Integer[] values) {
+        return heap(new MyMaxHeap<>(values));
+    }
+
+    private static Subjects.IntHeap heap(MyMaxHeap<Integer> heap) {
+        return new Subjects.IntHeap() {
+            @Override
+            public void insert(Integer value) {
+                heap.insert(value);
+            }
+            @Override
+            public Integer deleteMax() {
+                return heap.deleteMax();
+            }
+            @Override
+            public Integer findMax() {
+                return heap.findMax();
+            }
+            @Override
+            public boolean isEmpty() {
+                return heap.isEmpty();
+            }
+        };
+    }
+
+    @Override
+    public Subjects.Feed newFeed() {
+        FeedManager manager = MicroBenchmarks.buildGraph();
+        OutputSink out = new OutputSink();
+        manager.setOutput(out);
+        return new Subjects.Feed() {
+            @Override
+            public Object parse(String command) {
+                CommandLine line = new CommandLine();
+                line.set(command);
+                return line;
+            }
+            @Override
+            public long execute(Object command) {
+                try {
+                    manager.execute((CommandLine) command);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                long written = out.size();
+                out.reset();
+                return written;
+            }
+        };
+    }
+
+    @Override
+    public int feedUsers() {
+        return MicroBenchmarks.FEED_USERS;
+    }
+}
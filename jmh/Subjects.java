@@ -0,0 +1,54 @@
+package jmh;
+
+/**
+ * The classes of the project that the JMH benchmarks measure. JMH does not accept a benchmark in the default package, where the
+ * project is, and a class of a named package cannot refer to a class of the default package. So the benchmarks use the interfaces
+ * below, which JmhSubjects implements in the default package over MyHashMap, MyMaxHeap and FeedManager, and that class is found
+ * by its name once. Every benchmark calls a single implementation of an interface, so the calls are inlined like direct calls.
+ */
+public final class Subjects {
+    public interface StringMap {
+        void put(String key, String value);
+        String get(String key);
+        void remove(String key);
+        int size();
+    }
+
+    public interface IntHeap {
+        void insert(Integer value);
+        Integer deleteMax();
+        Integer findMax();
+        boolean isEmpty();
+    }
+
+    public interface Feed {
+        // Parses a command, so that its parsing is not measured.
+        Object parse(String command);
+        // Executes a parsed command and returns the number of bytes of its output, which is dropped.
+        long execute(Object command);
+    }
+
+    public interface Factory {
+        // Returns an empty map which grows by rehashing, or which is sized for the expected number of keys if it is positive.
+        StringMap newMap(int expectedSize);
+        IntHeap newHeap();
+        // Builds a heap of the values at once.
+        IntHeap buildHeap(Integer[] values);
+        // Returns the synthetic graph of MicroBenchmarks: its users are user0 to user{users - 1}.
+        Feed newFeed();
+        int feedUsers();
+    }
+
+    public static final Factory FACTORY = load();
+
+    private static Factory load() {
+        try {
+            return (Factory) Class.forName("JmhSubjects").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("JmhSubjects is not on the class path.", e);
+        }
+    }
+
+    private Subjects() {
+    }
+}